@@ -4,12 +4,13 @@ import os
 os.environ["TF_USE_LEGACY_KERAS"] = "1"
 # ------------------------------------------------------
 
+import json
+import zlib
 import requests
 import numpy as np
 import pandas as pd
 import tensorflow as tf
 import tensorflow_recommenders as tfrs
-from io import StringIO
 
 # Cấu hình - Đọc từ environment variable (cho Docker) hoặc dùng default (cho local)
 JAVA_API_URL = os.environ.get("JAVA_API_URL", "http://localhost:8080/api/v1/admin/interactions/export")
@@ -20,6 +21,14 @@ ADMIN_TOKEN = os.environ.get("ADMIN_TOKEN", "")
 SCRIPT_DIR = os.path.dirname(os.path.abspath(__file__))
 MODEL_BASE_PATH = os.environ.get("MODEL_BASE_PATH", os.path.join(SCRIPT_DIR, "saved_models"))
 
+# Cache interaction local + watermark để chỉ tải phần mới (delta export) ở các lần train sau
+# Mỗi lần export được lưu nguyên dạng cột nhị phân thành 1 file part-*.uix
+DATA_CACHE_DIR = os.environ.get("DATA_CACHE_DIR", os.path.join(MODEL_BASE_PATH, "data"))
+WATERMARK_FILE = os.path.join(DATA_CACHE_DIR, "watermark.json")
+
+COLUMNAR_MAGIC = b"UIX1"
+INTERACTION_TYPES = {0: "VIEW", 1: "CART", 2: "PURCHASE"}
+
 # --- ĐỊNH NGHĨA MODEL TENSORFLOW ---
 
 class ECommerceModel(tfrs.Model):
@@ -53,20 +62,100 @@ class RecommenderModule(tf.Module):
         }
 
 
+def parse_columnar(data):
+    """Parse định dạng cột nhị phân của Java (xem ColumnarInteractionWriter) thành DataFrame"""
+    if data[:4] != COLUMNAR_MAGIC:
+        raise Exception("Invalid columnar export (bad magic)")
+
+    columns = {"user_id": [], "product_id": [], "type_code": [], "rating_value": [], "timestamp": []}
+    offset = 4
+    while True:
+        rows, raw_length, compressed_length = np.frombuffer(data, dtype='<i4', count=3, offset=offset)
+        offset += 12
+        if rows == 0:
+            break
+        raw = zlib.decompress(data[offset:offset + compressed_length])
+        offset += compressed_length
+        if len(raw) != raw_length:
+            raise Exception("Corrupted columnar chunk")
+
+        position = 0
+        for name, dtype in (("user_id", '<i8'), ("product_id", '<i8'), ("type_code", 'i1'),
+                            ("rating_value", '<f4'), ("timestamp", '<i8')):
+            column = np.frombuffer(raw, dtype=dtype, count=rows, offset=position)
+            columns[name].append(column)
+            position += column.nbytes
+
+    merged = {name: np.concatenate(parts) if parts else np.empty(0) for name, parts in columns.items()}
+    df = pd.DataFrame({
+        "user_id": merged["user_id"],
+        "product_id": merged["product_id"],
+        "interaction_type": pd.Categorical(
+            pd.Series(merged["type_code"]).map(INTERACTION_TYPES)),
+        "rating_value": merged["rating_value"],
+        "timestamp": pd.to_datetime(merged["timestamp"], unit='ms'),
+    })
+    return df
+
+
+def load_watermark():
+    """Đọc watermark (since, sinceId) của lần export trước, None nếu chưa có cache"""
+    if not os.path.exists(WATERMARK_FILE):
+        return None
+    with open(WATERMARK_FILE) as f:
+        return json.load(f)
+
+
+def save_watermark(since, since_id):
+    tmp_path = WATERMARK_FILE + ".tmp"
+    with open(tmp_path, "w") as f:
+        json.dump({"since": since, "sinceId": since_id}, f)
+    os.replace(tmp_path, WATERMARK_FILE)
+
+
+def cached_parts():
+    return sorted(f for f in os.listdir(DATA_CACHE_DIR) if f.startswith("part-") and f.endswith(".uix"))
+
+
 def fetch_data():
-    """Lấy dữ liệu từ Java Backend"""
+    """Lấy dữ liệu từ Java Backend (delta từ watermark nếu đã có cache local)"""
     print("1. Fetching data from Java Backend...")
     
     headers = {}
     if ADMIN_TOKEN:
         headers['Authorization'] = f"Bearer {ADMIN_TOKEN}"
+
+    os.makedirs(DATA_CACHE_DIR, exist_ok=True)
+    watermark = load_watermark()
+    if watermark is None:
+        # Chưa có watermark -> cache cũ (nếu có) không dùng được, tải lại toàn bộ
+        for part in cached_parts():
+            os.remove(os.path.join(DATA_CACHE_DIR, part))
+    params = dict(watermark or {}, format="columnar")
     
-    response = requests.get(JAVA_API_URL, headers=headers)
+    response = requests.get(JAVA_API_URL, headers=headers, params=params)
     if response.status_code != 200:
         raise Exception(f"Failed to fetch data from Java. Status: {response.status_code}")
 
-    csv_data = StringIO(response.text)
-    df = pd.read_csv(csv_data)
+    delta = parse_columnar(response.content)
+    print(f"   {'Delta' if watermark else 'Full'} export: {len(delta)} rows, {len(response.content)} bytes")
+
+    # Lưu phần mới vào cache rồi mới lưu watermark -> lỗi giữa chừng chỉ làm tải lại delta
+    if not delta.empty:
+        part_path = os.path.join(DATA_CACHE_DIR, f"part-{len(cached_parts()):06d}.uix")
+        with open(part_path + ".tmp", "wb") as f:
+            f.write(response.content)
+        os.replace(part_path + ".tmp", part_path)
+
+    next_since = response.headers.get("X-Next-Since")
+    if next_since:
+        save_watermark(next_since, int(response.headers.get("X-Next-Since-Id", 0)))
+
+    parts = []
+    for part in cached_parts():
+        with open(os.path.join(DATA_CACHE_DIR, part), "rb") as f:
+            parts.append(parse_columnar(f.read()))
+    df = pd.concat(parts, ignore_index=True) if parts else delta
     
     if df.empty:
         raise Exception("Data from Java is empty. Cannot train.")
@@ -152,6 +241,37 @@ def save_model_for_serving(index, version=1):
     return model_path
 
 
+def write_embedding_matrix(path, ids, vectors):
+    """Ghi ma trận embedding: int32 rows, int32 dim, int64 ids[rows], float32 vectors[rows * dim] (little-endian)"""
+    vectors = np.ascontiguousarray(vectors, dtype='<f4')
+    with open(path, 'wb') as f:
+        f.write(np.array([vectors.shape[0], vectors.shape[1]], dtype='<i4').tobytes())
+        f.write(np.asarray(ids, dtype='<i8').tobytes())
+        f.write(vectors.tobytes())
+
+
+def save_embeddings_for_java(model, version=1):
+    """Export user/product embeddings để Java backend tự tính top-k (in-process engine)"""
+    print("6. Exporting embeddings for in-process engine...")
+
+    embeddings_dir = os.path.join(MODEL_BASE_PATH, "embeddings")
+    final_path = os.path.join(embeddings_dir, str(version))
+    tmp_path = os.path.join(embeddings_dir, f".tmp-{version}")
+    os.makedirs(tmp_path, exist_ok=True)
+
+    for name, sub_model in (("users", model.user_model), ("products", model.product_model)):
+        lookup, embedding = sub_model.layers[0], sub_model.layers[1]
+        # Index 0 của StringLookup là OOV token -> bỏ qua
+        vocabulary = lookup.get_vocabulary()[1:]
+        vectors = embedding.get_weights()[0][1:len(vocabulary) + 1]
+        write_embedding_matrix(os.path.join(tmp_path, f"{name}.bin"), [int(v) for v in vocabulary], vectors)
+
+    # Rename là atomic -> Java không bao giờ thấy version ghi dở
+    os.rename(tmp_path, final_path)
+    print(f"   Embeddings saved to: {final_path}")
+    return final_path
+
+
 def get_next_version():
     """Lấy version tiếp theo cho model"""
     model_dir = os.path.join(MODEL_BASE_PATH, "recommender")
@@ -180,6 +300,7 @@ def main():
         
         # Lưu model
         model_path = save_model_for_serving(index, version)
+        save_embeddings_for_java(model, version)
         
         print("=" * 50)
         print("Training completed successfully!")
@@ -0,0 +1,33 @@
+package com.ecommerce.cache;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Giá trị cache kèm metadata cho XFetch: thời gian tính lại (delta) và thời điểm hết hạn ở L2.
+ * expiresAtMillis = Long.MAX_VALUE: không biết/không có hạn (entry cũ, cache không TTL).
+ */
+public record CacheEnvelope(Object value,
+                            long deltaMillis,
+                            long expiresAtMillis) implements Serializable {
+
+    static CacheEnvelope wrap(Object value) {
+        return value instanceof CacheEnvelope envelope ? envelope : new CacheEnvelope(value, 0, Long.MAX_VALUE);
+    }
+
+    boolean isExpired(long now) {
+        return now >= expiresAtMillis;
+    }
+
+    /**
+     * XFetch: tính lại sớm với xác suất tăng dần khi gần hết hạn, tỉ lệ với thời gian tính lại.
+     * now - delta * beta * ln(rand) >= expiry  (ln(rand) <= 0)
+     */
+    boolean shouldRefreshEarly(long now, double beta) {
+        if (deltaMillis <= 0 || expiresAtMillis == Long.MAX_VALUE) {
+            return false;
+        }
+        double random = Math.max(Double.MIN_VALUE, ThreadLocalRandom.current().nextDouble());
+        return now - deltaMillis * beta * Math.log(random) >= expiresAtMillis;
+    }
+}
@@ -0,0 +1,62 @@
+package com.ecommerce.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Lock theo cache key trên Redis (SET NX PX) để chỉ 1 node tính lại 1 entry tại 1 thời điểm.
+ * Lock có TTL -> node chết giữa chừng không giữ lock mãi; release chỉ xóa lock nếu token còn là của mình.
+ */
+@Slf4j
+final class CacheLoadLock {
+
+    private static final String PREFIX = "cache_lock:";
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+    // Redis lỗi -> coi như có lock (tự load), không chặn request vì hạ tầng lock
+    static final String UNLOCKED = "";
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration lockTtl;
+
+    CacheLoadLock(StringRedisTemplate redisTemplate, Duration lockTtl) {
+        this.redisTemplate = redisTemplate;
+        this.lockTtl = lockTtl;
+    }
+
+    /**
+     * Trả về token nếu lấy được lock, null nếu node khác đang giữ.
+     */
+    String tryAcquire(String cacheName, String key) {
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(lockKey(cacheName, key), token, lockTtl);
+            return Boolean.TRUE.equals(acquired) ? token : null;
+        } catch (RuntimeException e) {
+            log.debug("Cache lock unavailable for {}::{}: {}", cacheName, key, e.getMessage());
+            return UNLOCKED;
+        }
+    }
+
+    void release(String cacheName, String key, String token) {
+        if (token == null || token.equals(UNLOCKED)) {
+            return;
+        }
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(lockKey(cacheName, key)), token);
+        } catch (RuntimeException e) {
+            log.debug("Failed to release cache lock {}::{}: {}", cacheName, key, e.getMessage());
+        }
+    }
+
+    private static String lockKey(String cacheName, String key) {
+        return PREFIX + cacheName + "::" + key;
+    }
+}
@@ -0,0 +1,105 @@
+package com.ecommerce.cache;
+
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tag -> cache keys trên Redis (mỗi tag là 1 SET): cat:{categoryId|all} và price:{bucket}.
+ * Entry cho sản phẩm thuộc (category c, bucket b) = SINTER(cat:c, price:b) ∪ SINTER(cat:all, price:b).
+ *
+ * Tag set được chia theo cửa sổ thời gian (generation = now / window, window >= TTL của cache):
+ * entry còn sống chắc chắn được đăng ký ở generation hiện tại hoặc trước đó, set cũ tự hết hạn sau 2 window
+ * -> không cần dọn các key đã hết TTL khỏi set.
+ */
+public class CacheTagIndex {
+
+    private static final String PREFIX = "cache_tags:";
+    private static final String ALL_CATEGORIES = "all";
+
+    private final StringRedisTemplate redisTemplate;
+    private final long windowMillis;
+
+    public CacheTagIndex(StringRedisTemplate redisTemplate, Duration window) {
+        this.redisTemplate = redisTemplate;
+        this.windowMillis = window.toMillis();
+    }
+
+    /**
+     * Ghi key vào tag set của category và mọi price bucket mà entry phủ tới (1 round-trip, pipelined).
+     */
+    public void register(String cacheName, ProductListingCacheKey key) {
+        if (key.fromBucket() > key.toBucket()) {
+            return; // khoảng giá rỗng -> không sản phẩm nào làm thay đổi entry này
+        }
+        long generation = currentGeneration();
+        String member = key.value();
+        List<String> tags = new ArrayList<>();
+        tags.add(categoryTag(cacheName, generation, key.categoryId()));
+        for (int bucket = key.fromBucket(); bucket <= key.toBucket(); bucket++) {
+            tags.add(priceTag(cacheName, generation, bucket));
+        }
+
+        long ttlSeconds = 2 * windowMillis / 1000;
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            for (String tag : tags) {
+                redis.sAdd(tag, member);
+                redis.expire(tag, ttlSeconds);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Các cache key có thể chứa sản phẩm thuộc (categoryId, bucket), qua mọi cặp được truyền vào.
+     */
+    public Set<String> findKeys(String cacheName, Set<CategoryBucket> tags) {
+        long generation = currentGeneration();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            for (long g = generation - 1; g <= generation; g++) {
+                for (CategoryBucket tag : tags) {
+                    String priceTag = priceTag(cacheName, g, tag.bucket());
+                    redis.sInter(categoryTag(cacheName, g, null), priceTag);
+                    if (tag.categoryId() != null) {
+                        redis.sInter(categoryTag(cacheName, g, tag.categoryId()), priceTag);
+                    }
+                }
+            }
+            return null;
+        });
+
+        Set<String> keys = new HashSet<>();
+        for (Object result : results) {
+            if (result instanceof Set<?> members) {
+                members.forEach(member -> keys.add(member.toString()));
+            }
+        }
+        return keys;
+    }
+
+    private long currentGeneration() {
+        return System.currentTimeMillis() / windowMillis;
+    }
+
+    private static String categoryTag(String cacheName, long generation, Long categoryId) {
+        return PREFIX + cacheName + ":" + generation + ":cat:" + (categoryId != null ? categoryId : ALL_CATEGORIES);
+    }
+
+    private static String priceTag(String cacheName, long generation, int bucket) {
+        return PREFIX + cacheName + ":" + generation + ":price:" + bucket;
+    }
+
+    /**
+     * Vị trí của 1 sản phẩm trên các trục tag.
+     */
+    public record CategoryBucket(Long categoryId, int bucket) {
+    }
+}
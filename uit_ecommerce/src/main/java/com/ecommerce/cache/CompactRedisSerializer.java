@@ -0,0 +1,462 @@
+package com.ecommerce.cache;
+
+import com.ecommerce.dto.response.CategoryResponse;
+import com.ecommerce.dto.response.FacetBucket;
+import com.ecommerce.dto.response.FacetedPage;
+import com.ecommerce.dto.response.ProductResponse;
+import com.ecommerce.dto.response.ProductVariantResponse;
+import com.ecommerce.dto.response.SearchFacets;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Serializer nhị phân gọn cho các DTO được cache (thay Java serialization: không ghi tên class/field,
+ * số nguyên dạng varint, không có metadata của ObjectStream).
+ *
+ * Format: byte đầu là loại payload
+ * - FORMAT_COMPACT: giá trị được encode trực tiếp
+ * - FORMAT_DEFLATED: varint độ dài gốc + dữ liệu deflate (chỉ khi payload >= compressThreshold và nén có lợi)
+ * - 0xAC (magic của Java serialization): dữ liệu JDK - dùng cho kiểu chưa đăng ký và entry cũ đã có trong Redis
+ *
+ * Mỗi giá trị có 1 byte tag. Kiểu đã đăng ký (record DTO, Page, Sort.Order) ghi: type id, số field, rồi từng field
+ * theo thứ tự. Khi đọc, field thiếu (dữ liệu ghi bởi phiên bản cũ hơn) = null, field thừa (phiên bản mới hơn) bị bỏ qua
+ * -> thêm field vào cuối record không làm hỏng các entry đang nằm trong cache.
+ * Type id là một phần của format: không đổi id đã dùng, chỉ thêm id mới.
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    static final byte FORMAT_COMPACT = (byte) 0xC1;
+    static final byte FORMAT_DEFLATED = (byte) 0xC2;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_LONG = 2;
+    private static final byte TAG_INT = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_TRUE = 5;
+    private static final byte TAG_FALSE = 6;
+    private static final byte TAG_DECIMAL = 7;
+    private static final byte TAG_LIST = 8;
+    private static final byte TAG_OBJECT = 9;
+
+    private static final int MAX_FIELDS = 16;
+
+    private static final Map<Class<?>, TypeCodec> CODECS_BY_TYPE = new HashMap<>();
+    private static final TypeCodec[] CODECS_BY_ID = new TypeCodec[32];
+
+    static {
+        register(TypeCodec.of(1, ProductResponse.class,
+                p -> new Object[]{p.id(), p.name(), p.description(), p.basePrice(), p.category(), p.images(),
+                        p.variants(), p.minPrice(), p.maxPrice(), p.inStock()},
+                f -> new ProductResponse((Long) f[0], (String) f[1], (String) f[2], (BigDecimal) f[3],
+                        (CategoryResponse) f[4], list(f[5]), list(f[6]), (BigDecimal) f[7], (BigDecimal) f[8],
+                        (Boolean) f[9])));
+        register(TypeCodec.of(2, ProductVariantResponse.class,
+                v -> new Object[]{v.id(), v.color(), v.size(), v.price(), v.stockQuantity(), v.sku()},
+                f -> new ProductVariantResponse((Long) f[0], (String) f[1], (String) f[2], (BigDecimal) f[3],
+                        (Integer) f[4], (String) f[5])));
+        register(TypeCodec.of(3, CategoryResponse.class,
+                c -> new Object[]{c.id(), c.name(), c.description()},
+                f -> new CategoryResponse((Long) f[0], (String) f[1], (String) f[2])));
+        register(TypeCodec.of(4, PageImpl.class,
+                p -> new Object[]{p.getContent(), pageableFields(p.getPageable()), p.getTotalElements()},
+                f -> new PageImpl<>(list(f[0]), toPageable(f[1]), (Long) f[2])));
+        register(TypeCodec.of(5, FacetedPage.class,
+                p -> new Object[]{p.getContent(), pageableFields(p.getPageable()), p.getTotalElements(), p.getFacets()},
+                f -> new FacetedPage<>(list(f[0]), toPageable(f[1]), (Long) f[2], (SearchFacets) f[3])));
+        register(TypeCodec.of(6, SearchFacets.class,
+                s -> new Object[]{s.categories(), s.priceRanges(), s.ratings()},
+                f -> new SearchFacets(list(f[0]), list(f[1]), list(f[2]))));
+        register(TypeCodec.of(7, FacetBucket.class,
+                b -> new Object[]{b.key(), b.from(), b.to(), b.count()},
+                f -> new FacetBucket((String) f[0], (Double) f[1], (Double) f[2], f[3] != null ? (Long) f[3] : 0L)));
+        register(TypeCodec.of(8, Sort.Order.class,
+                o -> new Object[]{o.getProperty(), o.getDirection().name(), o.isIgnoreCase(), o.getNullHandling().name()},
+                f -> toOrder(f)));
+        register(TypeCodec.of(9, CacheEnvelope.class,
+                e -> new Object[]{e.value(), e.deltaMillis(), e.expiresAtMillis()},
+                f -> new CacheEnvelope(f[0], f[1] != null ? (Long) f[1] : 0L, f[2] != null ? (Long) f[2] : Long.MAX_VALUE)));
+    }
+
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+    private final int compressThreshold;
+
+    /**
+     * @param compressThreshold payload từ bao nhiêu byte trở lên thì thử nén (<= 0: không nén)
+     */
+    public CompactRedisSerializer(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        Output out = new Output();
+        out.writeByte(FORMAT_COMPACT);
+        try {
+            writeValue(out, value);
+        } catch (UnsupportedTypeException e) {
+            // Có kiểu chưa đăng ký trong object graph -> dùng Java serialization cho cả giá trị
+            return jdkSerializer.serialize(value);
+        }
+
+        if (compressThreshold > 0 && out.size() >= compressThreshold) {
+            byte[] compressed = deflate(out.buffer(), 1, out.size() - 1);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return switch (bytes[0]) {
+                case FORMAT_COMPACT -> readValue(new Input(bytes, 1, bytes.length));
+                case FORMAT_DEFLATED -> {
+                    Input header = new Input(bytes, 1, bytes.length);
+                    int rawLength = (int) header.readVarLong();
+                    byte[] raw = inflate(bytes, header.position, rawLength);
+                    yield readValue(new Input(raw, 0, raw.length));
+                }
+                default -> jdkSerializer.deserialize(bytes);
+            };
+        } catch (SerializationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new SerializationException("Cannot deserialize compact cache value", e);
+        }
+    }
+
+    // ===== Encode =====
+
+    private static void writeValue(Output out, Object value) {
+        switch (value) {
+            case null -> out.writeByte(TAG_NULL);
+            case String s -> {
+                out.writeByte(TAG_STRING);
+                out.writeString(s);
+            }
+            case Long l -> {
+                out.writeByte(TAG_LONG);
+                out.writeVarLong(zigZag(l));
+            }
+            case Integer i -> {
+                out.writeByte(TAG_INT);
+                out.writeVarLong(zigZag(i));
+            }
+            case Double d -> {
+                out.writeByte(TAG_DOUBLE);
+                out.writeLong(Double.doubleToRawLongBits(d));
+            }
+            case Boolean b -> out.writeByte(b ? TAG_TRUE : TAG_FALSE);
+            case BigDecimal decimal -> {
+                out.writeByte(TAG_DECIMAL);
+                out.writeVarLong(zigZag(decimal.scale()));
+                byte[] unscaled = decimal.unscaledValue().toByteArray();
+                out.writeVarLong(unscaled.length);
+                out.writeBytes(unscaled, 0, unscaled.length);
+            }
+            case List<?> list -> {
+                out.writeByte(TAG_LIST);
+                out.writeVarLong(list.size());
+                for (Object element : list) {
+                    writeValue(out, element);
+                }
+            }
+            default -> {
+                TypeCodec codec = CODECS_BY_TYPE.get(value.getClass());
+                if (codec == null) {
+                    throw new UnsupportedTypeException();
+                }
+                Object[] fields = codec.fields.apply(value);
+                out.writeByte(TAG_OBJECT);
+                out.writeByte((byte) codec.id);
+                out.writeVarLong(fields.length);
+                for (Object field : fields) {
+                    writeValue(out, field);
+                }
+            }
+        }
+    }
+
+    // ===== Decode =====
+
+    private static Object readValue(Input in) {
+        byte tag = in.readByte();
+        return switch (tag) {
+            case TAG_NULL -> null;
+            case TAG_STRING -> in.readString();
+            case TAG_LONG -> unZigZag(in.readVarLong());
+            case TAG_INT -> (int) unZigZag(in.readVarLong());
+            case TAG_DOUBLE -> Double.longBitsToDouble(in.readLong());
+            case TAG_TRUE -> Boolean.TRUE;
+            case TAG_FALSE -> Boolean.FALSE;
+            case TAG_DECIMAL -> {
+                int scale = (int) unZigZag(in.readVarLong());
+                byte[] unscaled = in.readBytes((int) in.readVarLong());
+                yield new BigDecimal(new BigInteger(unscaled), scale);
+            }
+            case TAG_LIST -> {
+                int size = (int) in.readVarLong();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                yield list;
+            }
+            case TAG_OBJECT -> {
+                int id = in.readByte();
+                TypeCodec codec = id >= 0 && id < CODECS_BY_ID.length ? CODECS_BY_ID[id] : null;
+                if (codec == null) {
+                    throw new SerializationException("Unknown compact type id " + id);
+                }
+                int count = (int) in.readVarLong();
+                // Đệm null cho field mà dữ liệu cũ chưa có; field thừa vẫn được đọc (để nhảy qua) nhưng bị bỏ qua
+                Object[] fields = new Object[Math.max(count, MAX_FIELDS)];
+                for (int i = 0; i < count; i++) {
+                    fields[i] = readValue(in);
+                }
+                yield codec.create.apply(fields);
+            }
+            default -> throw new SerializationException("Unknown compact value tag " + tag);
+        };
+    }
+
+    // ===== Kiểu đặc biệt =====
+
+    private static List<Object> pageableFields(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return null;
+        }
+        return Arrays.asList(pageable.getPageNumber(), pageable.getPageSize(), pageable.getSort().toList());
+    }
+
+    private static Pageable toPageable(Object fields) {
+        if (fields == null) {
+            return Pageable.unpaged();
+        }
+        List<Object> values = list(fields);
+        List<Sort.Order> orders = list(values.get(2));
+        return PageRequest.of((Integer) values.get(0), (Integer) values.get(1),
+                orders == null || orders.isEmpty() ? Sort.unsorted() : Sort.by(orders));
+    }
+
+    private static Sort.Order toOrder(Object[] f) {
+        Sort.Order order = new Sort.Order(Sort.Direction.valueOf((String) f[1]), (String) f[0],
+                f[3] != null ? Sort.NullHandling.valueOf((String) f[3]) : Sort.NullHandling.NATIVE);
+        return Boolean.TRUE.equals(f[2]) ? order.ignoreCase() : order;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> list(Object value) {
+        return (List<T>) value;
+    }
+
+    // ===== Nén =====
+
+    private static byte[] deflate(byte[] raw, int offset, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw, offset, length);
+            deflater.finish();
+            Output out = new Output();
+            out.writeByte(FORMAT_DEFLATED);
+            out.writeVarLong(length);
+            byte[] chunk = new byte[Math.max(64, length / 2)];
+            while (!deflater.finished()) {
+                int written = deflater.deflate(chunk);
+                out.writeBytes(chunk, 0, written);
+                if (out.size() >= length) {
+                    return null; // nén không có lợi
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int offset, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            byte[] raw = new byte[rawLength];
+            int read = 0;
+            while (read < rawLength) {
+                int n = inflater.inflate(raw, read, rawLength - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new SerializationException("Truncated compressed cache value");
+                }
+                read += n;
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new SerializationException("Corrupted compressed cache value", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void register(TypeCodec codec) {
+        CODECS_BY_TYPE.put(codec.type, codec);
+        CODECS_BY_ID[codec.id] = codec;
+    }
+
+    // ===== Hạ tầng =====
+
+    private static final class TypeCodec {
+        private final int id;
+        private final Class<?> type;
+        private final Function<Object, Object[]> fields;
+        private final Function<Object[], Object> create;
+
+        private TypeCodec(int id, Class<?> type, Function<Object, Object[]> fields, Function<Object[], Object> create) {
+            this.id = id;
+            this.type = type;
+            this.fields = fields;
+            this.create = create;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> TypeCodec of(int id, Class<T> type, Function<T, Object[]> fields, Function<Object[], Object> create) {
+            return new TypeCodec(id, type, (Function<Object, Object[]>) fields, create);
+        }
+    }
+
+    private static final class UnsupportedTypeException extends RuntimeException {
+        UnsupportedTypeException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output() {
+            super(256);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void writeByte(byte value) {
+            write(value);
+        }
+
+        void writeBytes(byte[] bytes, int offset, int length) {
+            write(bytes, offset, length);
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length);
+            write(utf8, 0, utf8.length);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] bytes;
+        private final int limit;
+        private int position;
+
+        Input(byte[] bytes, int position, int limit) {
+            this.bytes = bytes;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        byte readByte() {
+            if (position >= limit) {
+                throw new SerializationException("Truncated compact cache value");
+            }
+            return bytes[position++];
+        }
+
+        byte[] readBytes(int length) {
+            if (length < 0 || position + length > limit) {
+                throw new SerializationException("Truncated compact cache value");
+            }
+            byte[] result = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return result;
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new SerializationException("Malformed varint in compact cache value");
+        }
+
+        long readLong() {
+            long result = 0;
+            for (int i = 0; i < 8; i++) {
+                result = (result << 8) | (readByte() & 0xFF);
+            }
+            return result;
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            if (length < 0 || position + length > limit) {
+                throw new SerializationException("Truncated compact cache value");
+            }
+            String result = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.ecommerce.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Chia trục giá thành các bucket theo cùng mốc với price facet: [b1, b2, ...] -> bucket 0 = (-inf, b1), ..., n = [bn, +inf).
+ */
+@Component
+public class PriceBuckets {
+
+    private final double[] boundaries;
+
+    public PriceBuckets(@Value("${application.search.facets.price-ranges:1000000,5000000,10000000,20000000}") List<Double> boundaries) {
+        this.boundaries = boundaries.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+    }
+
+    public int bucketOf(BigDecimal price) {
+        if (price == null) {
+            return 0;
+        }
+        double value = price.doubleValue();
+        int bucket = 0;
+        while (bucket < boundaries.length && value >= boundaries[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    public int lastBucket() {
+        return boundaries.length;
+    }
+}
@@ -0,0 +1,133 @@
+package com.ecommerce.cache;
+
+import com.ecommerce.elasticsearch.document.ProductDocument;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Xóa đúng các entry listing/search có thể chứa các sản phẩm vừa thay đổi (theo tag category + price bucket),
+ * thay cho @CacheEvict(allEntries = true) làm nguội toàn bộ cache.
+ * Truyền cả trạng thái cũ lẫn mới của sản phẩm để entry ở category/bucket cũ (sản phẩm vừa rời đi) cũng bị xóa.
+ * Cache chi tiết sản phẩm được xóa theo productId (xem ProductEntityChangeListener).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductCacheInvalidator {
+
+    private static final String PRODUCT_CACHE = "product";
+    private static final List<String> LISTING_CACHES = List.of("products_search", "products_page");
+
+    private final CacheManager cacheManager;
+    private final CacheTagIndex cacheTagIndex;
+    private final PriceBuckets priceBuckets;
+    private final TaskScheduler taskScheduler;
+
+    @Value("${application.cache.product.second-evict-delay-ms:5000}")
+    private long secondEvictDelayMs;
+
+    /**
+     * Xóa entry chi tiết sản phẩm (cache "product") của cả nhóm trong 1 lệnh DEL, rồi xóa lần nữa sau
+     * second-evict-delay-ms: loader (sync = true) đọc DB trước commit có thể ghi lại bản cũ ngay sau lần xóa đầu,
+     * TTL 1 giờ thì bản cũ đó sống rất lâu. Lần xóa thứ 2 chặn cửa sổ này (delay >= thời gian loader tối đa).
+     */
+    public void evictProducts(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        evictNow(productIds);
+        if (secondEvictDelayMs > 0) {
+            Set<Long> ids = new HashSet<>(productIds);
+            taskScheduler.schedule(() -> {
+                try {
+                    evictNow(ids);
+                } catch (RuntimeException e) {
+                    log.warn("Delayed product cache eviction failed for {}: {}", ids, e.getMessage());
+                }
+            }, Instant.now().plusMillis(secondEvictDelayMs));
+        }
+    }
+
+    private void evictNow(Collection<Long> productIds) {
+        Cache cache = cacheManager.getCache(PRODUCT_CACHE);
+        if (cache != null) {
+            evictAll(cache, productIds);
+        }
+        log.debug("Evicted {} product detail entries", productIds.size());
+    }
+
+    /**
+     * Như evictProducts nhưng chờ transaction hiện tại commit (dùng cho thay đổi không đi qua Hibernate,
+     * vd. UPDATE tồn kho bằng JDBC). Không có transaction -> evict ngay.
+     */
+    public void evictProductsAfterCommit(Collection<Long> productIds) {
+        Set<Long> ids = new HashSet<>(productIds);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evictProducts(ids);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    evictProducts(ids);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to evict product cache for {}: {}", ids, e.getMessage());
+                }
+            }
+        });
+    }
+
+    public void evictListings(Collection<ProductDocument> products) {
+        if (products.isEmpty()) {
+            return;
+        }
+        Set<CacheTagIndex.CategoryBucket> tags = new HashSet<>();
+        for (ProductDocument product : products) {
+            tags.add(new CacheTagIndex.CategoryBucket(product.getCategoryId(), priceBuckets.bucketOf(product.getBasePrice())));
+        }
+
+        for (String cacheName : LISTING_CACHES) {
+            Cache cache = cacheManager.getCache(cacheName);
+            if (cache == null) {
+                continue;
+            }
+            try {
+                Set<String> keys = cacheTagIndex.findKeys(cacheName, tags);
+                evictAll(cache, keys);
+                log.debug("Evicted {} entries from {} for {} tag(s)", keys.size(), cacheName, tags.size());
+            } catch (RuntimeException e) {
+                // Không tìm được tag -> an toàn hơn là xóa toàn bộ cache này
+                log.warn("Tag lookup failed for {}, clearing cache: {}", cacheName, e.getMessage());
+                cache.clear();
+            }
+        }
+    }
+
+    // 1 lệnh DEL + 1 message invalidation cho cả nhóm key thay vì mỗi key 1 lần
+    private static void evictAll(Cache cache, Collection<?> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (cache instanceof TaggedCache taggedCache) {
+            taggedCache.evictAll(keys);
+        } else if (cache instanceof TwoLevelCache twoLevelCache) {
+            twoLevelCache.evictAll(keys);
+        } else {
+            keys.forEach(cache::evict);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.ecommerce.cache;
+
+import com.ecommerce.entity.Product;
+import com.ecommerce.entity.ProductImage;
+import com.ecommerce.entity.ProductVariant;
+import com.ecommerce.recommendation.RecentInteractionStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lắng nghe thay đổi entity của Hibernate (Product, ProductVariant, ProductImage) để giữ cache "product" đúng:
+ * gom productId bị ảnh hưởng theo từng session/transaction, sau khi COMMIT thành công thì evict cả nhóm 1 lần.
+ * Rollback -> không evict (dữ liệu trong cache vẫn đúng). Cùng lúc bỏ category đã cache trong RecentInteractionStore.
+ * Lưu ý: bulk update bằng JPQL/SQL không đi qua listener này, phải tự evict.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductEntityChangeListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final ProductCacheInvalidator productCacheInvalidator;
+    private final RecentInteractionStore recentInteractionStore;
+
+    // Session -> productId đã thay đổi trong transaction hiện tại của session đó
+    private final Map<SharedSessionContractImplementor, Set<Long>> pending = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        collect(event.getSession(), event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        collect(event.getSession(), event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        collect(event.getSession(), event.getEntity());
+    }
+
+    // Tự xử lý sau commit qua ActionQueue (gom theo transaction), không cần Hibernate gọi lại từng entity
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    private void collect(EventSource session, Object entity) {
+        Long productId = productIdOf(entity);
+        if (productId == null) {
+            return;
+        }
+        pending.computeIfAbsent(session, s -> {
+            // Lần đầu trong transaction này -> đăng ký xử lý sau khi transaction kết thúc
+            session.getActionQueue().registerProcess(this::afterTransactionCompletion);
+            return ConcurrentHashMap.newKeySet();
+        }).add(productId);
+    }
+
+    private void afterTransactionCompletion(boolean success, SharedSessionContractImplementor session) {
+        Set<Long> productIds = pending.remove(session);
+        if (!success || productIds == null || productIds.isEmpty()) {
+            return;
+        }
+        try {
+            productCacheInvalidator.evictProducts(productIds);
+        } catch (RuntimeException e) {
+            log.warn("Failed to evict product cache for {}: {}", productIds, e.getMessage());
+        }
+        // Category có thể đã đổi
+        recentInteractionStore.invalidateProducts(productIds);
+    }
+
+    private static Long productIdOf(Object entity) {
+        if (entity instanceof Product product) {
+            return product.getId();
+        }
+        if (entity instanceof ProductVariant variant && variant.getProduct() != null) {
+            return variant.getProduct().getId();
+        }
+        if (entity instanceof ProductImage image && image.getProduct() != null) {
+            return image.getProduct().getId();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,17 @@
+package com.ecommerce.cache;
+
+/**
+ * Key của cache listing/search sản phẩm, kèm các tag mà entry phụ thuộc:
+ * category được lọc (null = mọi category) và các price bucket mà khoảng [minPrice, maxPrice] phủ tới.
+ * Redis chỉ thấy value (qua toString), tag dùng để đăng ký entry vào tag index khi put.
+ */
+public record ProductListingCacheKey(String value,
+                                     Long categoryId,
+                                     int fromBucket,
+                                     int toBucket) {
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
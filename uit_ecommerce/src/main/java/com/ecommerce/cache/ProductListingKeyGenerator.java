@@ -0,0 +1,41 @@
+package com.ecommerce.cache;
+
+import com.ecommerce.dto.request.ProductSearchCriteria;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+
+/**
+ * Sinh ProductListingCacheKey cho các method (ProductSearchCriteria, Pageable) được cache.
+ * Dùng: @Cacheable(value = "...", keyGenerator = "productListingKeyGenerator")
+ */
+@Component("productListingKeyGenerator")
+@RequiredArgsConstructor
+public class ProductListingKeyGenerator implements KeyGenerator {
+
+    private final PriceBuckets priceBuckets;
+
+    @Override
+    public Object generate(Object target, Method method, Object... params) {
+        ProductSearchCriteria criteria = null;
+        Pageable pageable = null;
+        for (Object param : params) {
+            if (param instanceof ProductSearchCriteria c) {
+                criteria = c;
+            } else if (param instanceof Pageable p) {
+                pageable = p;
+            }
+        }
+        if (criteria == null) {
+            throw new IllegalArgumentException("productListingKeyGenerator requires a ProductSearchCriteria parameter");
+        }
+
+        String value = criteria + "_" + pageable;
+        int fromBucket = criteria.minPrice() != null ? priceBuckets.bucketOf(criteria.minPrice()) : 0;
+        int toBucket = criteria.maxPrice() != null ? priceBuckets.bucketOf(criteria.maxPrice()) : priceBuckets.lastBucket();
+        return new ProductListingCacheKey(value, criteria.categoryId(), fromBucket, toBucket);
+    }
+}
@@ -0,0 +1,99 @@
+package com.ecommerce.cache;
+
+import org.springframework.cache.Cache;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+
+/**
+ * Decorator ghi tag của ProductListingCacheKey vào CacheTagIndex mỗi khi entry được put.
+ * Tag được ghi TRƯỚC khi put -> không có khoảng hở mà entry đã nằm trong cache nhưng invalidation chưa tìm thấy.
+ */
+public class TaggedCache implements Cache {
+
+    private final Cache delegate;
+    private final CacheTagIndex tagIndex;
+
+    public TaggedCache(Cache delegate, CacheTagIndex tagIndex) {
+        this.delegate = delegate;
+        this.tagIndex = tagIndex;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return delegate.get(key, type);
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return delegate.get(key, () -> {
+            T value = valueLoader.call();
+            register(key);
+            return value;
+        });
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        register(key);
+        delegate.put(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        register(key);
+        return delegate.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+    }
+
+    /**
+     * Evict nhiều key: delegate sang TwoLevelCache.evictAll (1 lệnh DEL + 1 message) nếu có, không thì từng key.
+     */
+    public void evictAll(Collection<?> keys) {
+        if (delegate instanceof TwoLevelCache twoLevelCache) {
+            twoLevelCache.evictAll(keys);
+        } else {
+            keys.forEach(delegate::evict);
+        }
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        return delegate.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        return delegate.invalidate();
+    }
+
+    private void register(Object key) {
+        if (key instanceof ProductListingCacheKey listingKey) {
+            tagIndex.register(getName(), listingKey);
+        }
+    }
+}
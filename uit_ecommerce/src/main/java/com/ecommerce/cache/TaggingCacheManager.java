@@ -0,0 +1,42 @@
+package com.ecommerce.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bọc các cache có tên trong taggedCacheNames bằng TaggedCache, các cache khác trả về nguyên trạng.
+ */
+public class TaggingCacheManager implements CacheManager {
+
+    private final CacheManager delegate;
+    private final CacheTagIndex tagIndex;
+    private final Set<String> taggedCacheNames;
+    private final Map<String, Cache> decorated = new ConcurrentHashMap<>();
+
+    public TaggingCacheManager(CacheManager delegate, CacheTagIndex tagIndex, Set<String> taggedCacheNames) {
+        this.delegate = delegate;
+        this.tagIndex = tagIndex;
+        this.taggedCacheNames = taggedCacheNames;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        if (!taggedCacheNames.contains(name)) {
+            return delegate.getCache(name);
+        }
+        return decorated.computeIfAbsent(name, n -> {
+            Cache cache = delegate.getCache(n);
+            return cache != null ? new TaggedCache(cache, tagIndex) : null;
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+}
@@ -0,0 +1,272 @@
+package com.ecommerce.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache 2 tầng: L1 Caffeine trong heap (không round-trip, không deserialize), L2 Redis dùng chung giữa các node.
+ * Đọc: L1 -> L2 (hit thì nạp lại vào L1) -> loader. Ghi: L2 rồi L1.
+ * Evict/clear: xóa cả 2 tầng và phát invalidation để các node khác xóa L1 của mình.
+ * L1 key là dạng String của key (giống key Redis) để message invalidation từ node khác khớp được.
+ *
+ * Chống cache stampede cho get(key, loader) (@Cacheable(sync = true)):
+ * - Single-flight trong node: các request cùng key chờ chung 1 lần load.
+ * - Lock Redis giữa các node: node không lấy được lock chờ node kia ghi L2 (tối đa lockWait) rồi mới tự load.
+ * - XFetch: giá trị được lưu trong CacheEnvelope (thời gian tính lại + hạn L2); trước khi hết hạn, 1 request
+ *   được chọn ngẫu nhiên (xác suất tăng dần) tính lại sớm, các request khác vẫn nhận giá trị hiện tại.
+ */
+public class TwoLevelCache implements Cache {
+
+    private static final long AWAIT_POLL_MILLIS = 20;
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<String, CacheEnvelope> local;
+    private final Cache remote;
+    private final TwoLevelCacheManager manager;
+    private final CacheLoadLock loadLock;
+    private final Duration lockWait;
+    private final double beta;
+    private final ConcurrentHashMap<String, CompletableFuture<CacheEnvelope>> inFlight = new ConcurrentHashMap<>();
+
+    TwoLevelCache(String name, com.github.benmanes.caffeine.cache.Cache<String, CacheEnvelope> local, Cache remote,
+                  TwoLevelCacheManager manager, CacheLoadLock loadLock, Duration lockWait, double beta) {
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.manager = manager;
+        this.loadLock = loadLock;
+        this.lockWait = lockWait;
+        this.beta = beta;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        CacheEnvelope envelope = lookup(key, localKey(key));
+        return envelope != null ? new SimpleValueWrapper(envelope.value()) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        CacheEnvelope current = lookup(key, localKey);
+        if (current == null) {
+            return (T) loadSingleFlight(key, localKey, valueLoader, null).value();
+        }
+        // Đã có node/thread khác đang tính lại -> không chờ, trả giá trị hiện tại
+        if (current.shouldRefreshEarly(System.currentTimeMillis(), beta) && !inFlight.containsKey(localKey)) {
+            return (T) loadSingleFlight(key, localKey, valueLoader, current).value();
+        }
+        return (T) current.value();
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (value == null) {
+            remote.put(key, null);
+            return;
+        }
+        CacheEnvelope envelope = new CacheEnvelope(value, 0, expiresAt(key, value));
+        remote.put(key, envelope);
+        local.put(localKey(key), envelope);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        CacheEnvelope envelope = value != null ? new CacheEnvelope(value, 0, expiresAt(key, value)) : null;
+        ValueWrapper existing = remote.putIfAbsent(key, envelope);
+        CacheEnvelope current = existing != null && existing.get() != null ? CacheEnvelope.wrap(existing.get()) : envelope;
+        if (current != null) {
+            local.put(localKey(key), current);
+        }
+        return existing != null ? new SimpleValueWrapper(current != null ? current.value() : null) : null;
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        String localKey = localKey(key);
+        local.invalidate(localKey);
+        manager.publishEviction(name, List.of(localKey));
+    }
+
+    /**
+     * Evict nhiều key: 1 lệnh DEL trên Redis và 1 message invalidation cho các node khác.
+     */
+    public void evictAll(Collection<?> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<String> localKeys = keys.stream().map(TwoLevelCache::localKey).toList();
+        if (remote instanceof RedisCache redisCache) {
+            String prefix = redisCache.getCacheConfiguration().getKeyPrefixFor(name);
+            manager.deleteRemote(localKeys.stream().map(key -> prefix + key).toList());
+        } else {
+            keys.forEach(remote::evict);
+        }
+        local.invalidateAll(localKeys);
+        manager.publishEviction(name, localKeys);
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.invalidateAll();
+        manager.publishEviction(name, List.of());
+    }
+
+    // Gọi khi nhận invalidation từ node khác: chỉ xóa L1, L2 đã được node gửi xử lý. Rỗng = clear
+    void evictLocal(List<String> localKeys) {
+        if (localKeys.isEmpty()) {
+            local.invalidateAll();
+        } else {
+            local.invalidateAll(localKeys);
+        }
+    }
+
+    // L1 -> L2, bỏ qua entry L1 đã quá hạn của L2 (L1 không sống lâu hơn dữ liệu gốc)
+    private CacheEnvelope lookup(Object key, String localKey) {
+        CacheEnvelope envelope = local.getIfPresent(localKey);
+        if (envelope != null && !envelope.isExpired(System.currentTimeMillis())) {
+            return envelope;
+        }
+        return lookupRemote(key, localKey);
+    }
+
+    private CacheEnvelope lookupRemote(Object key, String localKey) {
+        ValueWrapper wrapper = remote.get(key);
+        if (wrapper == null || wrapper.get() == null) {
+            return null;
+        }
+        CacheEnvelope envelope = CacheEnvelope.wrap(wrapper.get());
+        local.put(localKey, envelope);
+        return envelope;
+    }
+
+    private CacheEnvelope loadSingleFlight(Object key, String localKey, Callable<?> valueLoader, CacheEnvelope current) {
+        CompletableFuture<CacheEnvelope> mine = new CompletableFuture<>();
+        CompletableFuture<CacheEnvelope> existing = inFlight.putIfAbsent(localKey, mine);
+        if (existing != null) {
+            if (current != null) {
+                return current;
+            }
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            CacheEnvelope loaded = loadAcrossNodes(key, localKey, valueLoader, current);
+            mine.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(localKey, mine);
+        }
+    }
+
+    private CacheEnvelope loadAcrossNodes(Object key, String localKey, Callable<?> valueLoader, CacheEnvelope current) {
+        String token = loadLock.tryAcquire(name, localKey);
+        if (token == null) {
+            if (current != null) {
+                return current; // node khác đang tính lại sớm
+            }
+            CacheEnvelope loaded = awaitOtherNode(key, localKey);
+            // Quá thời gian chờ (node kia chậm/chết) -> tự load để request không bị treo
+            return loaded != null ? loaded : compute(key, localKey, valueLoader);
+        }
+        try {
+            if (current == null) {
+                // Node khác có thể vừa ghi xong ngay trước khi mình lấy được lock
+                CacheEnvelope fresh = lookupRemote(key, localKey);
+                if (fresh != null) {
+                    return fresh;
+                }
+            }
+            return compute(key, localKey, valueLoader);
+        } finally {
+            loadLock.release(name, localKey, token);
+        }
+    }
+
+    private CacheEnvelope awaitOtherNode(Object key, String localKey) {
+        long deadline = System.currentTimeMillis() + lockWait.toMillis();
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(AWAIT_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            CacheEnvelope envelope = lookupRemote(key, localKey);
+            if (envelope != null) {
+                return envelope;
+            }
+        }
+        return null;
+    }
+
+    private CacheEnvelope compute(Object key, String localKey, Callable<?> valueLoader) {
+        long start = System.currentTimeMillis();
+        Object value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        if (value == null) {
+            return new CacheEnvelope(null, 0, 0); // không cache null
+        }
+        CacheEnvelope envelope = new CacheEnvelope(value, System.currentTimeMillis() - start, expiresAt(key, value));
+        remote.put(key, envelope);
+        local.put(localKey, envelope);
+        return envelope;
+    }
+
+    private long expiresAt(Object key, Object value) {
+        if (remote instanceof RedisCache redisCache) {
+            Duration ttl = redisCache.getCacheConfiguration().getTtlFunction().getTimeToLive(key, value);
+            if (ttl != null && !ttl.isZero() && !ttl.isNegative()) {
+                return System.currentTimeMillis() + ttl.toMillis();
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+}
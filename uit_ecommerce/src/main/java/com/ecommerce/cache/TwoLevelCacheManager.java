@@ -0,0 +1,121 @@
+package com.ecommerce.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Đặt L1 Caffeine trước các cache Redis (xem TwoLevelCache).
+ * L1 giới hạn theo "trọng số" (số phần tử: 1 product = 1, 1 page = số product trong page) với admission W-TinyLFU
+ * mặc định của Caffeine -> key nóng ở lại heap, key hiếm không đẩy được chúng ra.
+ * Invalidation giữa các node qua Redis pub/sub: message "nodeId|cacheName|key1\nkey2..." (không có key = clear).
+ * TTL của L1 ngắn hơn L2 -> chặn trên thời gian stale nếu 1 message bị mất (pub/sub không đảm bảo giao nhận).
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, MessageListener {
+
+    public static final String INVALIDATION_CHANNEL = "cache:invalidate";
+    private static final char SEPARATOR = '|';
+    private static final String KEY_SEPARATOR = "\n";
+
+    private final CacheManager remoteCacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final long maxWeightPerCache;
+    private final Duration localTtl;
+    private final CacheLoadLock loadLock;
+    private final Duration lockWait;
+    private final double beta;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param lockTtl  thời gian tối đa 1 node giữ lock khi tính lại 1 entry
+     * @param lockWait thời gian node khác chờ entry được ghi trước khi tự load
+     * @param beta     hệ số XFetch (> 1: tính lại sớm hơn, 0: tắt)
+     */
+    public TwoLevelCacheManager(CacheManager remoteCacheManager, StringRedisTemplate redisTemplate,
+                                long maxWeightPerCache, Duration localTtl,
+                                Duration lockTtl, Duration lockWait, double beta) {
+        this.remoteCacheManager = remoteCacheManager;
+        this.redisTemplate = redisTemplate;
+        this.maxWeightPerCache = maxWeightPerCache;
+        this.localTtl = localTtl;
+        this.loadLock = new CacheLoadLock(redisTemplate, lockTtl);
+        this.lockWait = lockWait;
+        this.beta = beta;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoLevelCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache remote = remoteCacheManager.getCache(name);
+        if (remote == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, n -> new TwoLevelCache(n, Caffeine.newBuilder()
+                .maximumWeight(maxWeightPerCache)
+                .weigher((String key, CacheEnvelope envelope) -> weigh(envelope.value()))
+                .expireAfterWrite(localTtl)
+                .build(), remote, this, loadLock, lockWait, beta));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remoteCacheManager.getCacheNames();
+    }
+
+    void publishEviction(String cacheName, List<String> keys) {
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL,
+                    nodeId + SEPARATOR + cacheName + SEPARATOR + String.join(KEY_SEPARATOR, keys));
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish cache invalidation for {}: {}", cacheName, e.getMessage());
+        }
+    }
+
+    void deleteRemote(Collection<String> redisKeys) {
+        redisTemplate.delete(redisKeys);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int first = body.indexOf(SEPARATOR);
+        int second = first < 0 ? -1 : body.indexOf(SEPARATOR, first + 1);
+        if (second < 0 || body.startsWith(nodeId + SEPARATOR)) {
+            return; // message lỗi hoặc do chính node này gửi
+        }
+        TwoLevelCache cache = caches.get(body.substring(first + 1, second));
+        if (cache != null) {
+            String keys = body.substring(second + 1);
+            cache.evictLocal(keys.isEmpty() ? List.of() : Arrays.asList(keys.split(KEY_SEPARATOR)));
+        }
+    }
+
+    private static int weigh(Object value) {
+        if (value instanceof Page<?> page) {
+            return Math.max(1, page.getNumberOfElements());
+        }
+        if (value instanceof Collection<?> collection) {
+            return Math.max(1, collection.size());
+        }
+        return 1;
+    }
+}
@@ -1,25 +1,55 @@
 package com.ecommerce.config;
 
+import com.ecommerce.cache.CacheTagIndex;
+import com.ecommerce.cache.CompactRedisSerializer;
+import com.ecommerce.cache.TaggingCacheManager;
+import com.ecommerce.cache.TwoLevelCacheManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 @Configuration
 public class RedisConfig {
 
+    // Các cache listing/search được tag theo category + price bucket (xóa chọn lọc thay cho allEntries)
+    private static final Set<String> TAGGED_CACHES = Set.of("products_page", "products_search");
+    private static final Duration LISTING_TTL = Duration.ofMinutes(5);
+
+    /**
+     * Serializer cho value trong Redis (cache + RedisTemplate): "compact" (mặc định) hoặc "jdk".
+     * Compact vẫn đọc được entry JDK cũ -> đổi qua lại không cần flush Redis theo chiều jdk -> compact.
+     */
+    @Bean
+    public RedisSerializer<Object> redisValueSerializer(
+            @Value("${application.cache.serializer.type:compact}") String type,
+            @Value("${application.cache.serializer.compress-threshold-bytes:1024}") int compressThreshold) {
+        if ("jdk".equalsIgnoreCase(type)) {
+            return new JdkSerializationRedisSerializer();
+        }
+        return new CompactRedisSerializer(compressThreshold);
+    }
+
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory,
+                                                       RedisSerializer<Object> redisValueSerializer) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
 
@@ -27,41 +57,82 @@ public class RedisConfig {
         template.setKeySerializer(new StringRedisSerializer());
         template.setHashKeySerializer(new StringRedisSerializer());
 
-        // Use JDK serializer for values (DTOs implement Serializable)
-        JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
-        template.setValueSerializer(jdkSerializer);
-        template.setHashValueSerializer(jdkSerializer);
+        // Value serializer dùng chung với cache (xem redisValueSerializer)
+        template.setValueSerializer(redisValueSerializer);
+        template.setHashValueSerializer(redisValueSerializer);
 
         template.afterPropertiesSet();
         return template;
     }
 
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public CacheTagIndex cacheTagIndex(StringRedisTemplate stringRedisTemplate) {
+        // Cửa sổ tag phải >= TTL của cache được tag
+        return new CacheTagIndex(stringRedisTemplate, LISTING_TTL.multipliedBy(2));
+    }
+
+    /**
+     * L1 Caffeine (trong heap) trước Redis cho mọi cache, invalidation giữa các node qua pub/sub.
+     * Kèm chống stampede (single-flight, lock Redis, XFetch) cho các method @Cacheable(sync = true).
+     */
+    @Bean
+    public TwoLevelCacheManager twoLevelCacheManager(
+            RedisConnectionFactory connectionFactory,
+            RedisSerializer<Object> redisValueSerializer,
+            StringRedisTemplate stringRedisTemplate,
+            @Value("${application.cache.local.max-weight:10000}") long maxWeight,
+            @Value("${application.cache.local.ttl-seconds:60}") long ttlSeconds,
+            @Value("${application.cache.stampede.lock-ttl-ms:5000}") long lockTtlMs,
+            @Value("${application.cache.stampede.lock-wait-ms:2000}") long lockWaitMs,
+            @Value("${application.cache.stampede.xfetch-beta:1.0}") double beta) {
+        return new TwoLevelCacheManager(redisCacheManager(connectionFactory, redisValueSerializer), stringRedisTemplate,
+                maxWeight, Duration.ofSeconds(ttlSeconds),
+                Duration.ofMillis(lockTtlMs), Duration.ofMillis(lockWaitMs), beta);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(
+            RedisConnectionFactory connectionFactory, TwoLevelCacheManager twoLevelCacheManager) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(twoLevelCacheManager, new ChannelTopic(TwoLevelCacheManager.INVALIDATION_CHANNEL));
+        return container;
+    }
+
+    @Bean
+    @Primary
+    public CacheManager cacheManager(TwoLevelCacheManager twoLevelCacheManager, CacheTagIndex cacheTagIndex) {
+        return new TaggingCacheManager(twoLevelCacheManager, cacheTagIndex, TAGGED_CACHES);
+    }
+
+    private static RedisCacheManager redisCacheManager(RedisConnectionFactory connectionFactory,
+                                                       RedisSerializer<Object> valueSerializer) {
         // Default cache configuration
         RedisCacheConfiguration defaultConfig = RedisCacheConfiguration.defaultCacheConfig()
                 .serializeKeysWith(
                         RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
                 .serializeValuesWith(RedisSerializationContext.SerializationPair
-                        .fromSerializer(new JdkSerializationRedisSerializer()))
+                        .fromSerializer(valueSerializer))
                 .disableCachingNullValues()
                 .entryTtl(Duration.ofMinutes(10)); // Default TTL: 10 minutes
 
         // Custom TTL for specific caches
         Map<String, RedisCacheConfiguration> cacheConfigurations = new HashMap<>();
 
-        // Single product cache: 10 minutes
-        cacheConfigurations.put("product", defaultConfig.entryTtl(Duration.ofMinutes(10)));
+        // Single product cache: 1 hour (tồn kho/giá/rating thay đổi được evict sau commit + lần 2 sau delay, xem ProductCacheInvalidator)
+        cacheConfigurations.put("product", defaultConfig.entryTtl(Duration.ofHours(1)));
 
         // Product search/list cache (JPA): 5 minutes
-        cacheConfigurations.put("products_page", defaultConfig.entryTtl(Duration.ofMinutes(5)));
+        cacheConfigurations.put("products_page", defaultConfig.entryTtl(LISTING_TTL));
 
         // Elasticsearch search cache: 5 minutes
-        cacheConfigurations.put("products_search", defaultConfig.entryTtl(Duration.ofMinutes(5)));
+        cacheConfigurations.put("products_search", defaultConfig.entryTtl(LISTING_TTL));
 
-        return RedisCacheManager.builder(connectionFactory)
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
                 .cacheDefaults(defaultConfig)
                 .withInitialCacheConfigurations(cacheConfigurations)
                 .build();
+        redisCacheManager.afterPropertiesSet();
+        return redisCacheManager;
     }
 }
@@ -3,35 +3,50 @@ package com.ecommerce.controller;
 import com.ecommerce.entity.Product;
 import com.ecommerce.entity.User;
 import com.ecommerce.entity.UserInteraction;
+import com.ecommerce.recommendation.TfServingClient;
 import com.ecommerce.repository.ProductRepository;
 import com.ecommerce.repository.UserInteractionRepository;
 import com.ecommerce.repository.UserRepository;
 import com.ecommerce.scheduler.AiTrainingScheduler;
 import com.ecommerce.seeder.MasterDataSeeder;
+import com.ecommerce.service.FlashSaleInventoryService;
+import com.ecommerce.service.InteractionExportService;
+import com.ecommerce.service.InteractionExportService.Watermark;
+import com.ecommerce.service.InteractionService;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/v1/admin")
 @RequiredArgsConstructor
 public class AdminController {
 
+    private static final String COLUMNAR_MEDIA_TYPE = "application/x-interactions-columnar";
+
     private final UserInteractionRepository userInteractionRepository;
     private final UserRepository userRepository;
     private final ProductRepository productRepository;
     private final MasterDataSeeder masterDataSeeder;
     private final AiTrainingScheduler aiTrainingScheduler;
+    private final TfServingClient tfServingClient;
+    private final InteractionService interactionService;
+    private final InteractionExportService interactionExportService;
+    private final FlashSaleInventoryService flashSaleInventoryService;
 
     @PostMapping("/master-data")
     public ResponseEntity<String> seedMasterData(
@@ -105,44 +120,71 @@ public class AdminController {
         return ResponseEntity.ok("Đã tạo thành công " + count + " dòng dữ liệu tương tác giả.");
     }
 
+    /**
+     * Export interaction cho Python trainer.
+     * Định dạng: CSV (mặc định) hoặc cột nhị phân nén khi format=columnar / Accept: application/x-interactions-columnar.
+     * Không có since: export toàn bộ. Có since (+ sinceId): chỉ export các dòng mới hơn watermark đó.
+     * Watermark tiếp theo trả về trong header X-Next-Since / X-Next-Since-Id.
+     */
     @GetMapping("/interactions/export")
-    public void exportInteractionsToCsv(HttpServletResponse response) throws IOException {
+    public void exportInteractionsToCsv(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            @RequestParam(defaultValue = "0") long sinceId,
+            @RequestParam(required = false) String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response) throws IOException {
+        Watermark from = since != null ? new Watermark(since, sinceId) : null;
+
+        // Chốt watermark trên trước khi stream để header được gửi trước body
+        Watermark until = interactionExportService.findUpperWatermark()
+                .filter(upper -> from == null || upper.compareTo(from) > 0)
+                .orElse(null);
+        Watermark next = until != null ? until : from;
+        if (next != null) {
+            response.setHeader("X-Next-Since", next.timestamp().toString());
+            response.setHeader("X-Next-Since-Id", String.valueOf(next.id()));
+        }
+
+        boolean columnar = "columnar".equalsIgnoreCase(format)
+                || (format == null && accept != null && accept.contains(COLUMNAR_MEDIA_TYPE));
+        if (columnar) {
+            // Các chunk đã được nén deflate -> không gzip thêm
+            response.setContentType(COLUMNAR_MEDIA_TYPE);
+            response.setHeader("Content-Disposition", "attachment; filename=\"interactions.uix\"");
+            try (OutputStream body = response.getOutputStream()) {
+                interactionExportService.exportColumnar(body, from, until);
+            }
+            return;
+        }
+
         // 1. Cấu hình Header trả về là CSV
         response.setContentType("text/csv; charset=UTF-8");
         response.setHeader("Content-Disposition", "attachment; filename=\"interactions.csv\"");
 
-        // 2. Lấy dữ liệu từ DB
-        List<UserInteraction> interactions = userInteractionRepository.findAllDataForTraining();
-
-        // 3. Ghi dữ liệu vào response
-        try (PrintWriter writer = response.getWriter()) {
-            // Ghi dòng tiêu đề (Header Row)
-            // Lưu ý: Tên cột nên viết thường, cách nhau bằng dấu phẩy
-            writer.println("user_id,product_id,interaction_type,rating_value,timestamp");
-
-            // Ghi từng dòng dữ liệu
-            for (UserInteraction ui : interactions) {
-                writer.println(
-                        (ui.getUserId() != null ? ui.getUserId() : "") + "," +
-                                ui.getProductId() + "," +
-                                escapeSpecialCharacters(ui.getInteractionType()) + "," +
-                                ui.getRatingValue() + "," +
-                                ui.getTimestamp().toString());
-            }
+        // 2. Stream dữ liệu từ DB thẳng ra response (nén gzip nếu client hỗ trợ)
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        OutputStream output = response.getOutputStream();
+        try (OutputStream body = gzip ? new GZIPOutputStream(output, 64 * 1024) : output) {
+            interactionExportService.exportCsv(body, from, until);
         }
     }
 
-    // Helper: Xử lý trường hợp dữ liệu có chứa dấu phẩy (nếu có)
-    // Mặc dù interactionType của ta đơn giản, nhưng đây là best practice
-    private String escapeSpecialCharacters(String data) {
-        if (data == null)
-            return "";
-        String escapedData = data.replaceAll("\\R", " ");
-        if (data.contains(",") || data.contains("\"") || data.contains("'")) {
-            data = data.replace("\"", "\"\"");
-            escapedData = "\"" + data + "\"";
-        }
-        return escapedData;
+    /**
+     * Bật/tắt flash sale (tồn kho giữ trên Redis) cho 1 variant.
+     * PUT /api/v1/admin/variants/{id}/flash-sale?enabled=true
+     */
+    @PutMapping("/variants/{id}/flash-sale")
+    public ResponseEntity<Map<String, Object>> setFlashSale(@PathVariable Long id, @RequestParam boolean enabled) {
+        Long redisStock = flashSaleInventoryService.setFlashSale(id, enabled);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("variantId", id);
+        result.put("flashSale", enabled);
+        result.put("redisStock", redisStock);
+        return ResponseEntity.ok(result);
     }
 
     // ========== AI SERVICE ENDPOINTS ==========
@@ -167,4 +209,22 @@ public class AdminController {
         return ResponseEntity.ok(aiTrainingScheduler.checkHealth());
     }
 
+    /**
+     * TF Serving micro-batching metrics (batch fill ratio, số batch, số request).
+     * GET /api/v1/admin/ai/batching
+     */
+    @GetMapping("/ai/batching")
+    public ResponseEntity<Map<String, Object>> getAiBatchingStats() {
+        return ResponseEntity.ok(tfServingClient.getStats());
+    }
+
+    /**
+     * Interaction ingestion metrics (queue, số dòng đã ghi, số event bị bỏ khi quá tải).
+     * GET /api/v1/admin/interactions/ingestion
+     */
+    @GetMapping("/interactions/ingestion")
+    public ResponseEntity<Map<String, Object>> getInteractionIngestionStats() {
+        return ResponseEntity.ok(interactionService.getStats());
+    }
+
 }
\ No newline at end of file
@@ -2,11 +2,14 @@ package com.ecommerce.controller;
 
 import com.ecommerce.dto.request.ProductRequest;
 import com.ecommerce.dto.request.ProductSearchCriteria;
+import com.ecommerce.dto.response.CursorPage;
 import com.ecommerce.dto.response.ProductResponse;
+import com.ecommerce.dto.response.ProductSuggestion;
 import com.ecommerce.entity.User;
 import com.ecommerce.service.InteractionService;
 import com.ecommerce.service.ProductSearchService;
 import com.ecommerce.service.ProductService;
+import com.ecommerce.service.ProductSuggestService;
 import com.ecommerce.service.RecommendationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -31,6 +34,7 @@ public class ProductController {
     private final ProductSearchService productSearchService;
     private final RecommendationService recommendationService;
     private final InteractionService interactionService;
+    private final ProductSuggestService productSuggestService;
 
     // API Public: Tìm kiếm với Elasticsearch + Redis cache
     @GetMapping
@@ -43,8 +47,9 @@ public class ProductController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
             @RequestParam(defaultValue = "asc") String sortDir,
-            @RequestParam(defaultValue = "true") boolean useElasticsearch) {
-        ProductSearchCriteria criteria = new ProductSearchCriteria(keyword, categoryId, minPrice, maxPrice);
+            @RequestParam(defaultValue = "true") boolean useElasticsearch,
+            @RequestParam(defaultValue = "false") boolean includeFacets) {
+        ProductSearchCriteria criteria = new ProductSearchCriteria(keyword, categoryId, minPrice, maxPrice, includeFacets);
         Sort sort = sortDir.equalsIgnoreCase("desc") ? Sort.by(sortBy).descending() : Sort.by(sortBy).ascending();
         Pageable pageable = PageRequest.of(page, size, sort);
 
@@ -61,6 +66,30 @@ public class ProductController {
         return ResponseEntity.ok(productService.searchProducts(criteria, pageable));
     }
 
+    // API Public: Phân trang theo cursor (infinite scroll, duyệt sâu) - truyền nextCursor của trang trước
+    @GetMapping("/scroll")
+    public ResponseEntity<CursorPage<ProductResponse>> scrollProducts(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(defaultValue = "asc") String sortDir) {
+        ProductSearchCriteria criteria = new ProductSearchCriteria(keyword, categoryId, minPrice, maxPrice, false);
+        Sort sort = sortDir.equalsIgnoreCase("desc") ? Sort.by(sortBy).descending() : Sort.by(sortBy).ascending();
+        return ResponseEntity.ok(productSearchService.searchAfter(criteria, sort, Math.min(Math.max(size, 1), 100), cursor));
+    }
+
+    // API Public: Autocomplete tên sản phẩm (prefix index in-memory, không qua full-text search)
+    @GetMapping("/suggest")
+    public ResponseEntity<List<ProductSuggestion>> suggest(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "8") int limit) {
+        return ResponseEntity.ok(productSuggestService.suggest(q, Math.min(limit, 20)));
+    }
+
     // API Public: Xem chi tiết
     @GetMapping("/{id}")
     public ResponseEntity<ProductResponse> getProductDetail(@PathVariable Long id) {
@@ -94,6 +123,21 @@ public class ProductController {
         return ResponseEntity.ok("Products reindexed successfully");
     }
 
+    // API Public: Sản phẩm thường được xem/mua cùng (item-to-item)
+    @GetMapping("/{id}/similar")
+    public ResponseEntity<List<ProductResponse>> getSimilarProducts(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(recommendationService.getSimilarProducts(id, Math.min(limit, 50)));
+    }
+
+    // Sản phẩm đã xem gần đây của user đang đăng nhập
+    @GetMapping("/recently-viewed")
+    public ResponseEntity<List<ProductResponse>> getRecentlyViewed() {
+        User currentUser = productService.getCurrentUser();
+        return ResponseEntity.ok(recommendationService.getRecentlyViewedProducts(currentUser.getId()));
+    }
+
     @GetMapping("/recommendations")
     public ResponseEntity<List<ProductResponse>> getRecommendations() {
         User currentUser = productService.getCurrentUser();
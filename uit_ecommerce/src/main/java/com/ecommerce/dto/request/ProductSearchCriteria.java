@@ -5,5 +5,6 @@ import java.math.BigDecimal;
 public record ProductSearchCriteria(String keyword,
                                     Long categoryId,
                                     BigDecimal minPrice,
-                                    BigDecimal maxPrice) {
+                                    BigDecimal maxPrice,
+                                    boolean includeFacets) { // Trả thêm aggregation cho sidebar bộ lọc
 }
@@ -6,5 +6,6 @@ public record ProductVariantDto(String color,
                                 String size,
                                 BigDecimal price,
                                 Integer stockQuantity,
-                                String sku) {
+                                String sku,
+                                Boolean flashSale) {
 }
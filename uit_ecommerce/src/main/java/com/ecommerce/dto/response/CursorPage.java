@@ -0,0 +1,11 @@
+package com.ecommerce.dto.response;
+
+import java.util.List;
+
+/**
+ * Trang kết quả phân trang theo cursor (search_after): nextCursor = null khi đã hết dữ liệu.
+ */
+public record CursorPage<T>(List<T> content,
+                            int size,
+                            String nextCursor) {
+}
@@ -0,0 +1,12 @@
+package com.ecommerce.dto.response;
+
+import java.io.Serializable;
+
+/**
+ * 1 bucket của facet: key (ID category hoặc nhãn khoảng), khoảng [from, to) nếu là facet số, số sản phẩm.
+ */
+public record FacetBucket(String key,
+                          Double from,
+                          Double to,
+                          long count) implements Serializable {
+}
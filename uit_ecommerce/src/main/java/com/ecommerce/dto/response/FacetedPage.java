@@ -0,0 +1,23 @@
+package com.ecommerce.dto.response;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/**
+ * Page kết quả search kèm facets (null nếu request không yêu cầu).
+ */
+public class FacetedPage<T> extends PageImpl<T> {
+
+    private final SearchFacets facets;
+
+    public FacetedPage(List<T> content, Pageable pageable, long total, SearchFacets facets) {
+        super(content, pageable, total);
+        this.facets = facets;
+    }
+
+    public SearchFacets getFacets() {
+        return facets;
+    }
+}
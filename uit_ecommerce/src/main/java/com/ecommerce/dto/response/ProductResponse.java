@@ -13,5 +13,8 @@ public record ProductResponse(Long id,
                               BigDecimal basePrice,
                               CategoryResponse category,
                               List<String> images,       // Chỉ cần trả về List URL string cho nhẹ
-                              List<ProductVariantResponse> variants) implements Serializable {
+                              List<ProductVariantResponse> variants,
+                              BigDecimal minPrice,       // Khoảng giá theo variant
+                              BigDecimal maxPrice,
+                              Boolean inStock) implements Serializable {
 }
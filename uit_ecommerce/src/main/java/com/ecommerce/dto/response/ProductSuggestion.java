@@ -0,0 +1,7 @@
+package com.ecommerce.dto.response;
+
+import java.io.Serializable;
+
+public record ProductSuggestion(Long id,
+                                String name) implements Serializable {
+}
@@ -0,0 +1,12 @@
+package com.ecommerce.dto.response;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Aggregation trên tập kết quả đã lọc, dùng để dựng sidebar bộ lọc trong cùng 1 request search.
+ */
+public record SearchFacets(List<FacetBucket> categories,
+                           List<FacetBucket> priceRanges,
+                           List<FacetBucket> ratings) implements Serializable {
+}
@@ -5,9 +5,11 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.CompletionField;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.core.suggest.Completion;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
@@ -42,4 +44,21 @@ public class ProductDocument implements Serializable {
 
     @Field(type = FieldType.Integer)
     private Integer reviewCount;
+
+    // Các field cho listing card -> trang search dựng trực tiếp từ _source, không cần query DB
+    @Field(type = FieldType.Keyword, index = false)
+    private String thumbnailUrl;
+
+    @Field(type = FieldType.Double)
+    private BigDecimal minPrice;
+
+    @Field(type = FieldType.Double)
+    private BigDecimal maxPrice;
+
+    @Field(type = FieldType.Boolean)
+    private Boolean inStock;
+
+    // Completion suggester (nguồn dự phòng cho autocomplete khi prefix index in-memory chưa sẵn sàng)
+    @CompletionField(maxInputLength = 100)
+    private Completion suggest;
 }
@@ -31,4 +31,8 @@ public class ProductVariant {
     private BigDecimal price; // Giá thực tế của biến thể này
     private Integer stockQuantity; // Tồn kho
     private String sku; // Mã kho (VD: AO-DO-L)
+    // Tồn kho giữ trên Redis khi bán (xem FlashSaleInventoryService).
+    // DEFAULT false để ddl-auto=update thêm được cột vào bảng đã có dữ liệu
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private boolean flashSale;
 }
\ No newline at end of file
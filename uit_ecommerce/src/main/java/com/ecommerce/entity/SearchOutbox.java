@@ -0,0 +1,35 @@
+package com.ecommerce.entity;
+
+import com.ecommerce.enums.SearchOutboxOperation;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Thay đổi sản phẩm chờ đồng bộ sang Elasticsearch.
+ * Được ghi trong cùng transaction với thay đổi nghiệp vụ (product/variant/review) nên không bao giờ bị mất.
+ */
+@Entity
+@Table(name = "search_outbox")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchOutbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long productId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private SearchOutboxOperation operation;
+
+    private LocalDateTime createdAt;
+}
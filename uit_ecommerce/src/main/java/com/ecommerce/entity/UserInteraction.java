@@ -9,7 +9,13 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "user_interactions")
+@Table(name = "user_interactions", indexes = {
+        // Delta export theo watermark (timestamp, id)
+        @Index(name = "idx_user_interactions_timestamp_id", columnList = "timestamp, id"),
+        // Precompute: DISTINCT userId > cursor ORDER BY userId lọc theo timestamp -> đi index theo userId từ cursor,
+        // mỗi trang chỉ đọc interaction của các user trong trang đó thay vì quét lại cả cửa sổ thời gian
+        @Index(name = "idx_user_interactions_user_id_timestamp", columnList = "userId, timestamp")
+})
 @Data
 @Builder
 @NoArgsConstructor
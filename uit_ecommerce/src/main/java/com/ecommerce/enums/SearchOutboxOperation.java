@@ -0,0 +1,5 @@
+package com.ecommerce.enums;
+
+public enum SearchOutboxOperation {
+    UPSERT // Index lại document từ DB (sản phẩm không còn trong DB -> document bị xóa khỏi index)
+}
@@ -3,12 +3,16 @@ package com.ecommerce.mapper;
 import com.ecommerce.dto.response.CategoryResponse;
 import com.ecommerce.dto.response.ProductResponse;
 import com.ecommerce.dto.response.ProductVariantResponse;
+import com.ecommerce.elasticsearch.document.ProductDocument;
 import com.ecommerce.entity.Category;
 import com.ecommerce.entity.Product;
 import com.ecommerce.entity.ProductImage;
 import com.ecommerce.entity.ProductVariant;
 
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 public class ProductMapper {
@@ -33,6 +37,43 @@ public class ProductMapper {
                         : product.getVariants().stream()
                         .map(ProductMapper::toVariantResponse)
                         .collect(Collectors.toList()))
+                .minPrice(product.getVariants() == null ? null
+                        : product.getVariants().stream()
+                        .map(ProductVariant::getPrice)
+                        .filter(Objects::nonNull)
+                        .min(Comparator.naturalOrder())
+                        .orElse(null))
+                .maxPrice(product.getVariants() == null ? null
+                        : product.getVariants().stream()
+                        .map(ProductVariant::getPrice)
+                        .filter(Objects::nonNull)
+                        .max(Comparator.naturalOrder())
+                        .orElse(null))
+                .inStock(product.getVariants() != null && product.getVariants().stream()
+                        .anyMatch(v -> v.getStockQuantity() != null && v.getStockQuantity() > 0))
+                .build();
+    }
+
+    // Map từ Elasticsearch document -> ProductResponse (listing card: chỉ thumbnail, không có variants)
+    public static ProductResponse toProductResponse(ProductDocument document) {
+        if (document == null) return null;
+
+        return ProductResponse.builder()
+                .id(document.getId())
+                .name(document.getName())
+                .description(document.getDescription())
+                .basePrice(document.getBasePrice())
+                .category(document.getCategoryId() == null ? null
+                        : CategoryResponse.builder()
+                        .id(document.getCategoryId())
+                        .name(document.getCategoryName())
+                        .build())
+                .images(document.getThumbnailUrl() == null ? Collections.emptyList()
+                        : List.of(document.getThumbnailUrl()))
+                .variants(Collections.emptyList())
+                .minPrice(document.getMinPrice())
+                .maxPrice(document.getMaxPrice())
+                .inStock(document.getInStock())
                 .build();
     }
 
@@ -0,0 +1,236 @@
+package com.ecommerce.recommendation;
+
+import com.ecommerce.repository.ProductRepository;
+import com.ecommerce.repository.UserInteractionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bảng xếp hạng sản phẩm phổ biến theo từng category (và toàn cục), giữ sẵn trong RAM.
+ * Điểm = tổng rating_value của interaction, giảm dần theo thời gian (e^(-tuổi / tau)).
+ * - Rebuild định kỳ từ user_interactions (1 query GROUP BY trong Postgres)
+ * - Giữa 2 lần rebuild, interaction mới được cộng dồn và bảng được sort lại mỗi vài giây; interaction ghi trong lúc
+ *   rebuild được giữ lại; sau khi swap chỉ cộng lại những interaction có id > mốc maxId của query (không đếm 2 lần)
+ * - Sản phẩm mới (chưa có trong lần rebuild trước) lấy category từ cache của RecentInteractionStore ngay lần record đầu
+ * Loại trừ sản phẩm đã xem bằng BitSet thay cho SQL NOT IN.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CategoryPopularityRanking {
+
+    private final UserInteractionRepository userInteractionRepository;
+    private final ProductRepository productRepository;
+    private final RecentInteractionStore recentInteractionStore;
+
+    @Value("${application.recommendation.popularity.half-life-days:7}")
+    private double halfLifeDays;
+
+    @Value("${application.recommendation.popularity.window-days:90}")
+    private int windowDays;
+
+    // Trạng thái thay đổi (chỉ truy cập trong synchronized(this))
+    private LongFloatHashMap scores = new LongFloatHashMap();
+    private Map<Long, Long> productCategories = new HashMap<>();
+    private long scoreEpochMillis = System.currentTimeMillis();
+    private boolean dirty;
+    // != null khi đang rebuild: điểm record() trong lúc đó, replay vào bảng mới sau khi swap
+    private List<PendingScore> pendingDuringRebuild;
+
+    // Snapshot đã sort cho đọc (không lock)
+    private volatile Rankings rankings = new Rankings(Map.of(), new long[0]);
+
+    public boolean isReady() {
+        return rankings.global().length > 0;
+    }
+
+    /**
+     * Top-k sản phẩm phổ biến nhất của category, bỏ qua những ID có trong excluded.
+     */
+    public List<Long> top(Long categoryId, int k, BitSet excluded) {
+        long[] ranked = rankings.byCategory().get(categoryId);
+        return ranked == null ? List.of() : pick(ranked, k, excluded);
+    }
+
+    public List<Long> topGlobal(int k, BitSet excluded) {
+        return pick(rankings.global(), k, excluded);
+    }
+
+    /**
+     * Toàn bộ product ID theo độ phổ biến giảm dần (snapshot dùng chung, không được sửa).
+     */
+    public long[] globalOrder() {
+        return rankings.global();
+    }
+
+    /**
+     * Cộng điểm interaction mới (gọi từ InteractionService sau khi INSERT commit, interactionId = ID dòng vừa ghi).
+     */
+    public void record(Long interactionId, Long productId, double score) {
+        if (productId == null || score <= 0) {
+            return;
+        }
+        long nowMillis = System.currentTimeMillis();
+        synchronized (this) {
+            if (!productCategories.containsKey(productId)) {
+                resolveCategory(productCategories, productId);
+            }
+            scores.addTo(productId, decayed(score, nowMillis));
+            if (pendingDuringRebuild != null) {
+                pendingDuringRebuild.add(new PendingScore(interactionId, productId, score, nowMillis));
+            }
+            dirty = true;
+        }
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${application.recommendation.popularity.rebuild-ms:1800000}")
+    public void rebuild() {
+        synchronized (this) {
+            pendingDuringRebuild = new ArrayList<>();
+        }
+        try {
+            long start = System.currentTimeMillis();
+            LocalDateTime now = LocalDateTime.now();
+            // Mốc cắt lấy SAU khi bật pendingDuringRebuild: InteractionService ghi bằng 1 writer thread nên mọi dòng
+            // id <= maxId đã commit (nằm trong GROUP BY), dòng id > maxId chắc chắn record() sau mốc -> nằm trong pending
+            long maxId = userInteractionRepository.findMaxId();
+
+            LongFloatHashMap rebuiltScores = new LongFloatHashMap(1024);
+            for (Object[] row : userInteractionRepository.sumDecayedScoresByProduct(
+                    now, now.minusDays(windowDays), tauMillis() / 1000.0, maxId)) {
+                if (row[0] != null && row[1] != null) {
+                    rebuiltScores.addTo(((Number) row[0]).longValue(), ((Number) row[1]).floatValue());
+                }
+            }
+
+            Map<Long, Long> categories = new HashMap<>();
+            for (Object[] row : productRepository.findAllCategoryIds()) {
+                categories.put((Long) row[0], (Long) row[1]);
+            }
+
+            int replayed;
+            synchronized (this) {
+                scores = rebuiltScores;
+                productCategories = categories;
+                scoreEpochMillis = start;
+                // Chỉ cộng lại interaction chưa nằm trong GROUP BY (id > maxId); không rõ id -> coi như chưa có
+                replayed = 0;
+                for (PendingScore pending : pendingDuringRebuild) {
+                    if (pending.interactionId() != null && pending.interactionId() <= maxId) {
+                        continue;
+                    }
+                    replayed++;
+                    if (!categories.containsKey(pending.productId())) {
+                        resolveCategory(categories, pending.productId());
+                    }
+                    scores.addTo(pending.productId(), decayed(pending.score(), pending.atMillis()));
+                }
+                dirty = true;
+            }
+            resort();
+            log.info("Rebuilt popularity rankings for {} products in {} ms ({} interactions replayed)",
+                    categories.size(), System.currentTimeMillis() - start, replayed);
+        } catch (Exception e) {
+            log.error("Failed to rebuild popularity rankings: {}", e.getMessage());
+        } finally {
+            synchronized (this) {
+                pendingDuringRebuild = null;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${application.recommendation.popularity.resort-ms:10000}")
+    public void resort() {
+        // Sort trong lock để không đọc scores đang bị record() ghi (vài nghìn sản phẩm -> vài ms)
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            rankings = sort(scores, productCategories);
+        }
+    }
+
+    private static Rankings sort(LongFloatHashMap scores, Map<Long, Long> categories) {
+        // Sản phẩm chưa có interaction vẫn được xếp (điểm 0, ID mới hơn đứng trước)
+        int count = categories.size();
+        long[] productIds = new long[count];
+        float[] productScores = new float[count];
+        Integer[] order = new Integer[count];
+        int i = 0;
+        for (Long productId : categories.keySet()) {
+            productIds[i] = productId;
+            productScores[i] = scores.get(productId);
+            order[i] = i;
+            i++;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byScore = Float.compare(productScores[b], productScores[a]);
+            return byScore != 0 ? byScore : Long.compare(productIds[b], productIds[a]);
+        });
+
+        long[] global = new long[count];
+        Map<Long, List<Long>> grouped = new HashMap<>();
+        for (int rank = 0; rank < count; rank++) {
+            long productId = productIds[order[rank]];
+            global[rank] = productId;
+            Long categoryId = categories.get(productId);
+            if (categoryId != null) {
+                grouped.computeIfAbsent(categoryId, id -> new ArrayList<>()).add(productId);
+            }
+        }
+
+        Map<Long, long[]> byCategory = new HashMap<>();
+        grouped.forEach((categoryId, ids) -> byCategory.put(categoryId,
+                ids.stream().mapToLong(Long::longValue).toArray()));
+        return new Rankings(byCategory, global);
+    }
+
+    private float decayed(double score, long atMillis) {
+        // Quy đổi về mốc scoreEpoch: interaction mới hơn mốc có trọng số > 1 (tương đương các điểm cũ đã decay)
+        double ageMillis = scoreEpochMillis - atMillis;
+        return (float) (score * Math.exp(-ageMillis / tauMillis()));
+    }
+
+    private void resolveCategory(Map<Long, Long> categories, Long productId) {
+        // InteractionService gọi RecentInteractionStore.recordAll (1 query cho cả batch) trước record() -> chỉ đọc cache.
+        // Chưa có trong cache thì để lần record sau hoặc lần rebuild sau.
+        Long categoryId = recentInteractionStore.cachedCategoryOf(productId);
+        if (categoryId != null) {
+            categories.put(productId, categoryId != 0L ? categoryId : null);
+        }
+    }
+
+    private static List<Long> pick(long[] ranked, int k, BitSet excluded) {
+        List<Long> result = new ArrayList<>(k);
+        for (int i = 0; i < ranked.length && result.size() < k; i++) {
+            long productId = ranked[i];
+            if (excluded == null || productId > Integer.MAX_VALUE || !excluded.get((int) productId)) {
+                result.add(productId);
+            }
+        }
+        return result;
+    }
+
+    private double tauMillis() {
+        // half-life -> hằng số thời gian của hàm mũ
+        return halfLifeDays * 24 * 3600 * 1000 / Math.log(2);
+    }
+
+    private record PendingScore(Long interactionId, Long productId, double score, long atMillis) {
+    }
+
+    private record Rankings(Map<Long, long[]> byCategory, long[] global) {
+    }
+}
@@ -0,0 +1,132 @@
+package com.ecommerce.recommendation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Snapshot bất biến của 1 version embedding (user + product) do train_model.py export.
+ * Toàn bộ vector nằm trong mảng float phẳng (row-major) để vòng lặp dot product chạy tuần tự trên bộ nhớ.
+ *
+ * File format (little-endian): int32 rows, int32 dim, int64 ids[rows], float32 vectors[rows * dim]
+ */
+public final class EmbeddingModel {
+
+    private final long version;
+    private final int dimension;
+
+    // userIds đã sort để tra cứu bằng binary search (không cần boxing Map<Long, Integer>)
+    private final long[] userIds;
+    private final float[] userVectors;
+
+    private final long[] productIds;
+    private final float[] productVectors;
+
+    private EmbeddingModel(long version, Matrix users, Matrix products) {
+        if (users.dimension != products.dimension) {
+            throw new IllegalStateException("User/product embedding dimension mismatch: "
+                    + users.dimension + " vs " + products.dimension);
+        }
+        this.version = version;
+        this.dimension = users.dimension;
+        this.productIds = products.ids;
+        this.productVectors = products.vectors;
+
+        // Sort user rows theo id
+        Integer[] order = new Integer[users.ids.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(users.ids[a], users.ids[b]));
+
+        this.userIds = new long[order.length];
+        this.userVectors = new float[users.vectors.length];
+        for (int i = 0; i < order.length; i++) {
+            userIds[i] = users.ids[order[i]];
+            System.arraycopy(users.vectors, order[i] * dimension, userVectors, i * dimension, dimension);
+        }
+    }
+
+    public static EmbeddingModel load(long version, Path directory) throws IOException {
+        return new EmbeddingModel(version,
+                Matrix.read(directory.resolve("users.bin")),
+                Matrix.read(directory.resolve("products.bin")));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getProductCount() {
+        return productIds.length;
+    }
+
+    public int getUserCount() {
+        return userIds.length;
+    }
+
+    /**
+     * Top-k sản phẩm theo điểm dot product với embedding của user.
+     * Trả về mảng rỗng nếu user chưa có trong model (cold start).
+     */
+    public long[] topK(long userId, int k) {
+        int userRow = Arrays.binarySearch(userIds, userId);
+        if (userRow < 0 || k <= 0) {
+            return new long[0];
+        }
+
+        int userOffset = userRow * dimension;
+        TopKSelector topK = new TopKSelector(Math.min(k, productIds.length));
+        for (int row = 0; row < productIds.length; row++) {
+            topK.offer(productIds[row], dot(userVectors, userOffset, productVectors, row * dimension, dimension));
+        }
+        return topK.result();
+    }
+
+    // Unroll 4 accumulator độc lập để JIT (C2) auto-vectorize thành lệnh SIMD
+    private static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int upper = length & ~3;
+        for (; i < upper; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private record Matrix(long[] ids, float[] vectors, int dimension) {
+
+        static Matrix read(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+                int rows = buffer.getInt();
+                int dimension = buffer.getInt();
+                long expected = 8L + rows * 8L + (long) rows * dimension * 4L;
+                if (rows < 0 || dimension <= 0 || expected != channel.size()) {
+                    throw new IOException("Corrupted embedding file: " + file);
+                }
+
+                long[] ids = new long[rows];
+                buffer.asLongBuffer().get(ids);
+                buffer.position(buffer.position() + rows * 8);
+
+                float[] vectors = new float[rows * dimension];
+                buffer.asFloatBuffer().get(vectors);
+                return new Matrix(ids, vectors, dimension);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.ecommerce.recommendation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * In-process recommendation engine: tính top-k trực tiếp trong JVM từ embedding do train_model.py export,
+ * thay cho HTTP call tới TensorFlow Serving.
+ * Khi trainer ghi version mới vào saved_models/embeddings/{version}, model được load rồi swap atomic
+ * (request đang chạy vẫn dùng snapshot cũ cho tới khi xong).
+ */
+@Slf4j
+@Component
+public class EmbeddingRecommender {
+
+    @Value("${application.ai.embedding.enabled:false}")
+    private boolean enabled;
+
+    @Value("${application.ai.embedding.model-dir:saved_models/embeddings}")
+    private String modelDir;
+
+    private volatile EmbeddingModel model;
+
+    public boolean isReady() {
+        return enabled && model != null;
+    }
+
+    public Long getModelVersion() {
+        EmbeddingModel current = model;
+        return current != null ? current.getVersion() : null;
+    }
+
+    public List<Long> recommend(Long userId, int k) {
+        EmbeddingModel current = model;
+        if (current == null || userId == null) {
+            return List.of();
+        }
+        return Arrays.stream(current.topK(userId, k)).boxed().toList();
+    }
+
+    /**
+     * Quét thư mục model, load version mới nhất nếu khác version đang dùng.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${application.ai.embedding.poll-interval-ms:60000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+
+        Path root = Paths.get(modelDir);
+        if (!Files.isDirectory(root)) {
+            log.debug("Embedding directory not found: {}", root.toAbsolutePath());
+            return;
+        }
+
+        try {
+            Long latest = findLatestVersion(root);
+            EmbeddingModel current = model;
+            if (latest == null || (current != null && current.getVersion() == latest)) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            EmbeddingModel loaded = EmbeddingModel.load(latest, root.resolve(String.valueOf(latest)));
+            model = loaded;
+
+            log.info("Loaded embedding model v{} ({} users, {} products) in {} ms",
+                    latest, loaded.getUserCount(), loaded.getProductCount(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            // Giữ nguyên model cũ nếu version mới bị lỗi
+            log.error("Failed to load embedding model: {}", e.getMessage());
+        }
+    }
+
+    private Long findLatestVersion(Path root) throws IOException {
+        // Thư mục ".tmp-*" là version trainer đang ghi dở -> bỏ qua
+        try (Stream<Path> dirs = Files.list(root)) {
+            return dirs.filter(Files::isDirectory)
+                    .map(dir -> dir.getFileName().toString())
+                    .filter(name -> name.chars().allMatch(Character::isDigit))
+                    .map(Long::parseLong)
+                    .max(Long::compare)
+                    .orElse(null);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.ecommerce.recommendation;
+
+import com.ecommerce.entity.UserInteraction;
+import com.ecommerce.repository.UserInteractionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ma trận co-occurrence item-item ("khách xem/mua sản phẩm này cũng quan tâm...") giữ hoàn toàn trong RAM.
+ * Cập nhật tăng dần theo từng interaction: sản phẩm mới được ghép cặp với các sản phẩm gần đây của cùng user,
+ * trọng số cặp = min(điểm VIEW/CART/PURCHASE của 2 bên).
+ * Cửa sổ theo user được giới hạn số lượng (Caffeine, max-users) và bị bỏ khi user không hoạt động
+ * quá warmup-days (cửa sổ đó cũng không còn được warm-up lại sau restart).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ItemCooccurrenceIndex {
+
+    private static final int WARMUP_PAGE_SIZE = 5_000;
+
+    private final UserInteractionRepository userInteractionRepository;
+
+    @Value("${application.recommendation.cooccurrence.window-size:20}")
+    private int windowSize;
+
+    @Value("${application.recommendation.cooccurrence.max-neighbors:200}")
+    private int maxNeighbors;
+
+    @Value("${application.recommendation.cooccurrence.warmup-days:30}")
+    private int warmupDays;
+
+    @Value("${application.recommendation.cooccurrence.max-users:100000}")
+    private int maxUsers;
+
+    // productId -> (productId lân cận -> trọng số)
+    private final ConcurrentHashMap<Long, LongFloatHashMap> rows = new ConcurrentHashMap<>();
+    // userId -> các sản phẩm tương tác gần nhất (cửa sổ ghép cặp)
+    private Cache<Long, UserWindow> userWindows;
+
+    @PostConstruct
+    public void init() {
+        userWindows = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(Duration.ofDays(warmupDays))
+                .build();
+    }
+
+    /**
+     * Ghi nhận 1 interaction và cập nhật các cặp co-occurrence liên quan.
+     */
+    public void record(Long userId, Long productId, double score) {
+        if (userId == null || productId == null || score <= 0) {
+            return;
+        }
+        UserWindow window = userWindows.get(userId, id -> new UserWindow(windowSize));
+        long[] neighbors;
+        float[] pairDeltas;
+        synchronized (window) {
+            float previous = window.weightOf(productId);
+            float current = Math.max(previous, (float) score);
+            neighbors = window.productsExcept(productId);
+            pairDeltas = new float[neighbors.length];
+            // Chỉ cộng phần chênh lệch -> xem lại cùng sản phẩm không thổi phồng trọng số
+            for (int i = 0; i < neighbors.length; i++) {
+                float other = window.weightOf(neighbors[i]);
+                pairDeltas[i] = Math.min(current, other) - Math.min(previous, other);
+            }
+            window.touch(productId, current);
+        }
+
+        for (int i = 0; i < neighbors.length; i++) {
+            if (pairDeltas[i] > 0f) {
+                increment(productId, neighbors[i], pairDeltas[i]);
+                increment(neighbors[i], productId, pairDeltas[i]);
+            }
+        }
+    }
+
+    /**
+     * Top-k sản phẩm hay đi kèm với productId.
+     */
+    public List<Long> similar(Long productId, int k) {
+        LongFloatHashMap row = rows.get(productId);
+        if (row == null) {
+            return List.of();
+        }
+        TopKSelector topK = new TopKSelector(k);
+        synchronized (row) {
+            row.forEach(topK::offer);
+        }
+        return Arrays.stream(topK.result()).boxed().toList();
+    }
+
+    /**
+     * Candidate cho user: cộng dồn hàng co-occurrence của các sản phẩm user vừa tương tác.
+     */
+    public List<Long> recommendFor(Long userId, int k) {
+        UserWindow window = userWindows.getIfPresent(userId);
+        if (window == null) {
+            return List.of();
+        }
+        long[] seeds;
+        synchronized (window) {
+            seeds = window.productsExcept(0L);
+        }
+        return recommendFromSeeds(Arrays.stream(seeds).boxed().toList(), k);
+    }
+
+    public List<Long> recommendFromSeeds(Collection<Long> seeds, int k) {
+        Set<Long> seedSet = Set.copyOf(seeds);
+        LongFloatHashMap scores = new LongFloatHashMap(seeds.size() * 16);
+        for (Long seed : seedSet) {
+            LongFloatHashMap row = rows.get(seed);
+            if (row == null) {
+                continue;
+            }
+            synchronized (row) {
+                row.forEach((neighbor, weight) -> {
+                    if (!seedSet.contains(neighbor)) {
+                        scores.addTo(neighbor, weight);
+                    }
+                });
+            }
+        }
+        TopKSelector topK = new TopKSelector(k);
+        scores.forEach(topK::offer);
+        return Arrays.stream(topK.result()).boxed().toList();
+    }
+
+    public int getProductCount() {
+        return rows.size();
+    }
+
+    /**
+     * Replay interaction gần đây từ DB khi khởi động (chạy nền, không chặn startup).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Thread.ofVirtual().name("cooccurrence-warmup").start(() -> {
+            long start = System.currentTimeMillis();
+            LocalDateTime since = LocalDateTime.now().minusDays(warmupDays);
+            long lastId = 0L;
+            long total = 0;
+            try {
+                while (true) {
+                    List<UserInteraction> page = userInteractionRepository.findByIdGreaterThanAndTimestampAfterOrderByIdAsc(
+                            lastId, since, PageRequest.of(0, WARMUP_PAGE_SIZE));
+                    if (page.isEmpty()) {
+                        break;
+                    }
+                    for (UserInteraction interaction : page) {
+                        if (interaction.getRatingValue() != null) {
+                            record(interaction.getUserId(), interaction.getProductId(), interaction.getRatingValue());
+                        }
+                    }
+                    total += page.size();
+                    lastId = page.get(page.size() - 1).getId();
+                }
+                log.info("Co-occurrence index warmed up from {} interactions ({} products) in {} ms",
+                        total, rows.size(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.error("Co-occurrence index warm-up failed: {}", e.getMessage());
+            }
+        });
+    }
+
+    private void increment(long productId, long neighborId, float delta) {
+        LongFloatHashMap row = rows.computeIfAbsent(productId, id -> new LongFloatHashMap());
+        synchronized (row) {
+            row.addTo(neighborId, delta);
+            // Giới hạn bộ nhớ: khi vượt 2x thì chỉ giữ top max-neighbors
+            if (row.size() > maxNeighbors * 2) {
+                row.retainTop(maxNeighbors);
+            }
+        }
+    }
+
+    /**
+     * Cửa sổ n sản phẩm gần nhất của 1 user (mảng vòng, phần tử mới ghi đè cũ nhất).
+     */
+    private static final class UserWindow {
+        private final long[] products;
+        private final float[] weights;
+        private int next;
+
+        UserWindow(int capacity) {
+            products = new long[capacity];
+            weights = new float[capacity];
+        }
+
+        float weightOf(long productId) {
+            for (int i = 0; i < products.length; i++) {
+                if (products[i] == productId) {
+                    return weights[i];
+                }
+            }
+            return 0f;
+        }
+
+        long[] productsExcept(long productId) {
+            return Arrays.stream(products).filter(p -> p != 0L && p != productId).toArray();
+        }
+
+        void touch(long productId, float weight) {
+            for (int i = 0; i < products.length; i++) {
+                if (products[i] == productId) {
+                    weights[i] = weight;
+                    return;
+                }
+            }
+            products[next] = productId;
+            weights[next] = weight;
+            next = (next + 1) % products.length;
+        }
+    }
+}
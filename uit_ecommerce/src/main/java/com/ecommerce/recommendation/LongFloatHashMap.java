@@ -0,0 +1,138 @@
+package com.ecommerce.recommendation;
+
+/**
+ * Hash map long -> float (open addressing, linear probing) dùng mảng primitive thay cho HashMap<Long, Float>
+ * để tiết kiệm bộ nhớ cho ma trận thưa (không boxing, không Entry object).
+ * Key 0 được dùng làm ô trống nên không hợp lệ (ID entity luôn >= 1). Không thread-safe.
+ */
+public final class LongFloatHashMap {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private float[] values;
+    private int size;
+
+    public LongFloatHashMap() {
+        this(8);
+    }
+
+    public LongFloatHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new float[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float get(long key) {
+        int slot = find(key);
+        return slot >= 0 ? values[slot] : 0f;
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Cộng delta vào value hiện tại (0 nếu chưa có), trả về value mới.
+     */
+    public float addTo(long key, float delta) {
+        if (key == 0L) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0L) {
+            if (keys[slot] == key) {
+                return values[slot] += delta;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+        return delta;
+    }
+
+    public void forEach(Consumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0L) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Chỉ giữ lại n entry có value lớn nhất (dùng để giới hạn bộ nhớ mỗi hàng).
+     */
+    public void retainTop(int n) {
+        if (size <= n) {
+            return;
+        }
+        TopKSelector topK = new TopKSelector(n);
+        forEach(topK::offer);
+        long[] kept = topK.result();
+
+        float[] keptValues = new float[kept.length];
+        for (int i = 0; i < kept.length; i++) {
+            keptValues[i] = get(kept[i]);
+        }
+
+        LongFloatHashMap rebuilt = new LongFloatHashMap(n);
+        for (int i = 0; i < kept.length; i++) {
+            rebuilt.addTo(kept[i], keptValues[i]);
+        }
+        this.keys = rebuilt.keys;
+        this.values = rebuilt.values;
+        this.size = rebuilt.size;
+    }
+
+    private int find(long key) {
+        if (key == 0L) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0L) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        float[] oldValues = values;
+        keys = new long[capacity];
+        values = new float[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0L) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != 0L) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // ID tuần tự -> trộn bit để tránh cluster khi linear probing
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, float value);
+    }
+}
@@ -0,0 +1,7 @@
+package com.ecommerce.recommendation;
+
+/**
+ * Phát ra khi phát hiện TF Serving đã load model version mới.
+ */
+public record ModelVersionChangedEvent(String previousVersion, String newVersion) {
+}
@@ -0,0 +1,300 @@
+package com.ecommerce.recommendation;
+
+import com.ecommerce.entity.UserInteraction;
+import com.ecommerce.repository.ProductRepository;
+import com.ecommerce.repository.UserInteractionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Lưu N interaction gần nhất của mỗi user trong RAM (ring buffer productId + categoryId dạng primitive).
+ * Được feed theo batch từ writer thread của InteractionService sau khi INSERT thành công, warm-up lazy từ DB ở lần
+ * get() đầu tiên. Event ghi trong lúc warm-up được giữ lại và replay khi buffer được cài; event không mới hơn dòng
+ * mới nhất đã load bị bỏ qua để không trùng.
+ * Chia shard theo userId, mỗi shard là 1 LRU có lock riêng để giới hạn bộ nhớ và tránh tranh chấp lock.
+ */
+@Component
+@RequiredArgsConstructor
+public class RecentInteractionStore {
+
+    private static final int SHARD_COUNT = 64;
+
+    private final UserInteractionRepository userInteractionRepository;
+    private final ProductRepository productRepository;
+
+    @Value("${application.recommendation.recent.capacity:10}")
+    private int capacity;
+
+    @Value("${application.recommendation.recent.max-users:100000}")
+    private int maxUsers;
+
+    @Value("${application.recommendation.recent.max-products:100000}")
+    private int maxProducts;
+
+    @Value("${application.recommendation.recent.category-ttl-minutes:30}")
+    private long categoryTtlMinutes;
+
+    private final Shard[] shards = new Shard[SHARD_COUNT];
+
+    // productId -> categoryId (0 nếu không có category), tránh query lại khi user tương tác sản phẩm quen
+    private Cache<Long, Long> productCategories;
+
+    @PostConstruct
+    public void init() {
+        // capacity <= 0 làm get() đầu tiên lỗi và content stage âm thầm rỗng -> fail fast khi khởi động
+        Assert.isTrue(capacity > 0, "application.recommendation.recent.capacity must be > 0, was " + capacity);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new Shard(Math.max(1, maxUsers / SHARD_COUNT));
+        }
+        productCategories = Caffeine.newBuilder()
+                .maximumSize(maxProducts)
+                .expireAfterWrite(Duration.ofMinutes(categoryTtlMinutes))
+                .build();
+    }
+
+    /**
+     * Ghi nhận 1 batch interaction đã lưu DB (userIds/productIds/timestamps song song, cũ trước), gọi từ writer thread
+     * của InteractionService. Category cả batch resolve bằng 1 query; user chưa có buffer thì bỏ qua (lần get() đầu
+     * tiên warm-up từ DB), trừ khi đang warm-up -> giữ lại để replay. Writer thread không query theo từng event.
+     */
+    public void recordAll(List<Long> userIds, List<Long> productIds, List<LocalDateTime> timestamps) {
+        loadCategories(productIds.stream().filter(Objects::nonNull).toList());
+        for (int i = 0; i < userIds.size(); i++) {
+            Long userId = userIds.get(i);
+            Long productId = productIds.get(i);
+            LocalDateTime timestamp = timestamps.get(i);
+            if (userId == null || productId == null || timestamp == null) {
+                continue;
+            }
+            RecentBuffer buffer;
+            Shard shard = shardOf(userId);
+            synchronized (shard) {
+                buffer = shard.get(userId);
+                if (buffer == null) {
+                    // SELECT warm-up có thể đã chạy trước khi batch này commit -> giữ lại, replay khi cài buffer
+                    List<PendingInteraction> pending = shard.loading.get(userId);
+                    if (pending != null) {
+                        pending.add(new PendingInteraction(productId, timestamp));
+                    }
+                    continue;
+                }
+            }
+            synchronized (buffer) {
+                buffer.push(productId, categoryOf(productId), timestamp);
+            }
+        }
+    }
+
+    /**
+     * Bỏ category đã cache của các sản phẩm vừa thay đổi (gọi sau commit, xem ProductEntityChangeListener).
+     * Interaction đã nằm trong ring buffer giữ nguyên category tại thời điểm ghi nhận.
+     */
+    public void invalidateProducts(Collection<Long> productIds) {
+        productCategories.invalidateAll(productIds);
+    }
+
+    /**
+     * Category đã cache của sản phẩm (0 nếu sản phẩm không có category), null nếu chưa có trong cache. Không query DB.
+     */
+    public Long cachedCategoryOf(Long productId) {
+        return productCategories.getIfPresent(productId);
+    }
+
+    /**
+     * Snapshot interaction gần nhất của user (mới nhất trước).
+     */
+    public RecentInteractions get(Long userId) {
+        RecentBuffer buffer = getOrLoad(userId);
+        synchronized (buffer) {
+            return buffer.snapshot();
+        }
+    }
+
+    private RecentBuffer getOrLoad(Long userId) {
+        Shard shard = shardOf(userId);
+        synchronized (shard) {
+            RecentBuffer buffer = shard.get(userId);
+            if (buffer != null) {
+                return buffer;
+            }
+            // Đánh dấu đang warm-up để recordAll giữ lại event ghi trong lúc load
+            shard.loading.computeIfAbsent(userId, id -> new ArrayList<>());
+        }
+
+        // Load ngoài lock của shard để không chặn user khác cùng shard
+        RecentBuffer loaded;
+        try {
+            loaded = loadFromDatabase(userId);
+        } catch (RuntimeException e) {
+            synchronized (shard) {
+                shard.loading.remove(userId);
+            }
+            throw e;
+        }
+
+        synchronized (shard) {
+            List<PendingInteraction> pending = shard.loading.remove(userId);
+            RecentBuffer existing = shard.get(userId);
+            if (existing != null) {
+                return existing;
+            }
+            if (pending != null) {
+                for (PendingInteraction interaction : pending) {
+                    loaded.push(interaction.productId(), categoryOf(interaction.productId()), interaction.timestamp());
+                }
+            }
+            shard.put(userId, loaded);
+            return loaded;
+        }
+    }
+
+    private RecentBuffer loadFromDatabase(Long userId) {
+        List<UserInteraction> interactions =
+                userInteractionRepository.findByUserIdOrderByTimestampDesc(userId, PageRequest.of(0, capacity));
+        if (interactions.isEmpty()) {
+            return new RecentBuffer(capacity, null);
+        }
+        RecentBuffer buffer = new RecentBuffer(capacity, interactions.get(0).getTimestamp());
+
+        List<Long> productIds = interactions.stream().map(UserInteraction::getProductId).toList();
+        loadCategories(productIds);
+
+        // DB trả về mới nhất trước -> push từ cũ đến mới
+        for (int i = interactions.size() - 1; i >= 0; i--) {
+            Long productId = interactions.get(i).getProductId();
+            buffer.append(productId, categoryOf(productId));
+        }
+        return buffer;
+    }
+
+    private long categoryOf(Long productId) {
+        Long categoryId = productCategories.getIfPresent(productId);
+        return categoryId != null ? categoryId : 0L;
+    }
+
+    private void loadCategories(Collection<Long> productIds) {
+        List<Long> missing = productIds.stream()
+                .filter(id -> productCategories.getIfPresent(id) == null)
+                .distinct()
+                .toList();
+        if (missing.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> loaded = new HashMap<>();
+        // Sản phẩm không có category hoặc đã bị xóa -> 0
+        missing.forEach(id -> loaded.put(id, 0L));
+        for (Object[] row : productRepository.findCategoryIdsByIdIn(missing)) {
+            loaded.put((Long) row[0], row[1] != null ? (Long) row[1] : 0L);
+        }
+        productCategories.putAll(loaded);
+    }
+
+    private Shard shardOf(Long userId) {
+        // User ID tuần tự -> chia đều theo bit thấp
+        return shards[(int) (userId & (SHARD_COUNT - 1))];
+    }
+
+    /**
+     * productIds/categoryIds song song, mới nhất trước. categoryId = 0 nếu sản phẩm không có category.
+     */
+    public record RecentInteractions(long[] productIds, long[] categoryIds) {
+
+        public boolean isEmpty() {
+            return productIds.length == 0;
+        }
+
+        /**
+         * Product ID không trùng, giữ thứ tự mới nhất trước.
+         */
+        public List<Long> distinctProductIds() {
+            List<Long> result = new ArrayList<>(productIds.length);
+            for (long productId : productIds) {
+                if (!result.contains(productId)) {
+                    result.add(productId);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * LRU theo thứ tự truy cập, tự bỏ user ít dùng nhất khi vượt giới hạn.
+     */
+    private static final class Shard extends LinkedHashMap<Long, RecentBuffer> {
+        private final int maxEntries;
+        // userId đang warm-up -> event ghi trong lúc load
+        private final Map<Long, List<PendingInteraction>> loading = new HashMap<>();
+
+        Shard(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, RecentBuffer> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    private record PendingInteraction(long productId, LocalDateTime timestamp) {
+    }
+
+    private static final class RecentBuffer {
+        private final long[] productIds;
+        private final long[] categoryIds;
+        private int head; // vị trí ghi tiếp theo
+        private int size;
+        // Timestamp dòng mới nhất đã load từ DB (null nếu user chưa có interaction)
+        private final LocalDateTime loadedUntil;
+
+        RecentBuffer(int capacity, LocalDateTime loadedUntil) {
+            productIds = new long[capacity];
+            categoryIds = new long[capacity];
+            this.loadedUntil = loadedUntil;
+        }
+
+        /**
+         * Thêm interaction từ writer thread; bỏ qua nếu SELECT warm-up đã thấy dòng này.
+         */
+        void push(long productId, long categoryId, LocalDateTime timestamp) {
+            if (loadedUntil != null && !timestamp.isAfter(loadedUntil)) {
+                return;
+            }
+            append(productId, categoryId);
+        }
+
+        void append(long productId, long categoryId) {
+            productIds[head] = productId;
+            categoryIds[head] = categoryId;
+            head = (head + 1) % productIds.length;
+            size = Math.min(size + 1, productIds.length);
+        }
+
+        RecentInteractions snapshot() {
+            long[] products = new long[size];
+            long[] categories = new long[size];
+            for (int i = 0; i < size; i++) {
+                int index = Math.floorMod(head - 1 - i, productIds.length);
+                products[i] = productIds[index];
+                categories[i] = categoryIds[index];
+            }
+            return new RecentInteractions(products, categories);
+        }
+    }
+}
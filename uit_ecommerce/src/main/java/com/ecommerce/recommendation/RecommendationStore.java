@@ -0,0 +1,136 @@
+package com.ecommerce.recommendation;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Lưu danh sách gợi ý đã precompute trong Redis.
+ * Key: rec:{modelVersion}:{userId}, value: mảng long (8 byte/ID) thay vì Java serialization.
+ * Version model hiện tại nằm ở key rec:model-version để mọi node backend cùng đọc.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RecommendationStore {
+
+    private static final String VERSION_KEY = "rec:model-version";
+    private static final long VERSION_REFRESH_MS = 30_000;
+    private static final String PRECOMPUTE_CLAIM_PREFIX = "rec:precompute-claim:";
+    // Trong khoảng này chỉ 1 node precompute cho 1 version (event lúc deploy + cron trên mọi node)
+    private static final Duration PRECOMPUTE_CLAIM_TTL = Duration.ofMinutes(30);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${application.recommendation.precompute.enabled:true}")
+    private boolean enabled;
+
+    @Value("${application.recommendation.precompute.ttl-hours:24}")
+    private long ttlHours;
+
+    private volatile String currentVersion;
+    private volatile long versionCheckedAt;
+
+    /**
+     * Danh sách product ID đã precompute cho user ở model version hiện tại, rỗng nếu miss.
+     */
+    public Optional<List<Long>> get(Long userId) {
+        if (!enabled || userId == null) {
+            return Optional.empty();
+        }
+        try {
+            String version = getCurrentVersion();
+            if (version == null) {
+                return Optional.empty();
+            }
+            byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                    connection.stringCommands().get(key(version, userId)));
+            return value == null ? Optional.empty() : Optional.of(decode(value));
+        } catch (Exception e) {
+            log.warn("Failed to read precomputed recommendations for user {}: {}", userId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Ghi 1 batch danh sách gợi ý trong 1 pipeline.
+     */
+    public void putAll(String version, Map<Long, List<Long>> recommendations) {
+        if (recommendations.isEmpty()) {
+            return;
+        }
+        Expiration expiration = Expiration.from(Duration.ofHours(ttlHours));
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            recommendations.forEach((userId, productIds) -> connection.stringCommands().set(
+                    key(version, userId), encode(productIds), expiration, RedisStringCommands.SetOption.upsert()));
+            return null;
+        });
+    }
+
+    public String getCurrentVersion() {
+        long now = System.currentTimeMillis();
+        if (now - versionCheckedAt > VERSION_REFRESH_MS) {
+            Object version = redisTemplate.opsForValue().get(VERSION_KEY);
+            currentVersion = version != null ? version.toString() : null;
+            versionCheckedAt = now;
+        }
+        return currentVersion;
+    }
+
+    /**
+     * Chuyển request path sang version mới (gọi sau khi đã precompute xong cho version đó).
+     */
+    public void activateVersion(String version) {
+        redisTemplate.opsForValue().set(VERSION_KEY, version);
+        currentVersion = version;
+        versionCheckedAt = System.currentTimeMillis();
+        log.info("Precomputed recommendations switched to model version {}", version);
+    }
+
+    /**
+     * Giành quyền precompute version này giữa các node (SET NX có TTL). false = node khác vừa/đang chạy.
+     */
+    public boolean tryClaimPrecompute(String version) {
+        byte[] claimKey = (PRECOMPUTE_CLAIM_PREFIX + version).getBytes(StandardCharsets.UTF_8);
+        Boolean claimed = redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands().set(
+                claimKey, new byte[]{1}, Expiration.from(PRECOMPUTE_CLAIM_TTL), RedisStringCommands.SetOption.ifAbsent()));
+        return Boolean.TRUE.equals(claimed);
+    }
+
+    // Precompute lỗi -> trả quyền để lần sau (node nào cũng được) chạy lại
+    public void releasePrecomputeClaim(String version) {
+        redisTemplate.delete(PRECOMPUTE_CLAIM_PREFIX + version);
+    }
+
+    private static byte[] key(String version, Long userId) {
+        return ("rec:" + version + ":" + userId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(List<Long> productIds) {
+        ByteBuffer buffer = ByteBuffer.allocate(productIds.size() * Long.BYTES);
+        productIds.forEach(buffer::putLong);
+        return buffer.array();
+    }
+
+    private static List<Long> decode(byte[] value) {
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        List<Long> productIds = new ArrayList<>(value.length / Long.BYTES);
+        while (buffer.remaining() >= Long.BYTES) {
+            productIds.add(buffer.getLong());
+        }
+        return productIds;
+    }
+}
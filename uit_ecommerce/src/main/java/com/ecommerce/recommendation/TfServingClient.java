@@ -0,0 +1,277 @@
+package com.ecommerce.recommendation;
+
+import com.ecommerce.dto.TfServingResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client gọi TensorFlow Serving với micro-batching.
+ * Signature "recommend" nhận shape=[None] nên các request đồng thời được gom trong vài ms
+ * (hoặc tới max-batch-size user) rồi gửi chung một mảng "instances", sau đó chia "predictions" về từng caller.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TfServingClient {
+
+    private final RestTemplate restTemplate;
+
+    @Value("${application.ai.service.url}")
+    private String tfServingUrl; // http://tf-serving:8501/v1/models/recommender:predict
+
+    @Value("${application.ai.batching.enabled:true}")
+    private boolean batchingEnabled;
+
+    @Value("${application.ai.batching.max-batch-size:32}")
+    private int maxBatchSize;
+
+    @Value("${application.ai.batching.max-wait-ms:5}")
+    private long maxWaitMs;
+
+    @Value("${application.ai.batching.timeout-ms:2000}")
+    private long timeoutMs;
+
+    @Value("${application.ai.batching.queue-capacity:1024}")
+    private int queueCapacity;
+
+    @Value("${application.ai.batching.max-in-flight:4}")
+    private int maxInFlight;
+
+    // Khởi tạo trong start() vì capacity/permits lấy từ @Value
+    private BlockingQueue<PendingRequest> queue;
+    private Semaphore inFlight;
+
+    // Mỗi batch gửi trên 1 virtual thread riêng; Semaphore giới hạn số batch in-flight khi TF Serving chậm
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    // Metrics
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong batchedUserCount = new AtomicLong();
+    private final AtomicLong failedBatchCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong abandonedCount = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        if (!batchingEnabled) {
+            return;
+        }
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        inFlight = new Semaphore(maxInFlight);
+        running = true;
+        dispatcher = Thread.ofPlatform().daemon().name("tf-serving-batcher").start(this::dispatchLoop);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        sender.shutdown();
+
+        if (queue == null) {
+            return;
+        }
+        List<PendingRequest> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.forEach(r -> r.future().completeExceptionally(new IllegalStateException("TF Serving client stopped")));
+    }
+
+    /**
+     * Lấy danh sách product ID gợi ý cho 1 user (block tới khi batch chứa request này trả về).
+     */
+    public List<Long> recommend(Long userId) {
+        requestCount.incrementAndGet();
+        if (!batchingEnabled) {
+            return predict(List.of(userId)).get(0);
+        }
+
+        if (!running) {
+            throw new IllegalStateException("TF Serving client stopped");
+        }
+
+        CompletableFuture<List<Long>> future = new CompletableFuture<>();
+        if (!queue.offer(new PendingRequest(userId, future))) {
+            // Queue đầy = TF Serving không theo kịp -> fail fast thay vì xếp hàng vô hạn
+            rejectedCount.incrementAndGet();
+            throw new RuntimeException("TF Serving batch queue is full (" + queueCapacity + " pending requests)");
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // Đánh dấu bỏ cuộc để dispatcher không gửi request này nữa
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for TF Serving", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("TF Serving request failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new RuntimeException("TF Serving request timed out after " + timeoutMs + " ms", e);
+        }
+    }
+
+    /**
+     * Gọi TF Serving cho nhiều user trong 1 request. Kết quả theo đúng thứ tự userIds.
+     */
+    public List<List<Long>> predict(List<Long> userIds) {
+        Map<String, Object> requestBody = Map.of(
+                "instances", userIds.stream().map(String::valueOf).toList());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+
+        TfServingResponse response = restTemplate.postForObject(tfServingUrl, request, TfServingResponse.class);
+
+        List<TfServingResponse.Prediction> predictions = response != null && response.predictions() != null
+                ? response.predictions()
+                : List.of();
+        if (predictions.size() != userIds.size()) {
+            throw new IllegalStateException("TF Serving returned " + predictions.size()
+                    + " predictions for " + userIds.size() + " instances");
+        }
+
+        List<List<Long>> results = new ArrayList<>(predictions.size());
+        for (TfServingResponse.Prediction prediction : predictions) {
+            results.add(prediction.productIds() == null ? List.of()
+                    : prediction.productIds().stream().map(Long::parseLong).toList());
+        }
+        return results;
+    }
+
+    public Map<String, Object> getStats() {
+        long batches = batchCount.get();
+        long users = batchedUserCount.get();
+        double avgBatchSize = batches == 0 ? 0.0 : (double) users / batches;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("batchingEnabled", batchingEnabled);
+        stats.put("maxBatchSize", maxBatchSize);
+        stats.put("maxWaitMs", maxWaitMs);
+        stats.put("requests", requestCount.get());
+        stats.put("batches", batches);
+        stats.put("failedBatches", failedBatchCount.get());
+        stats.put("rejectedRequests", rejectedCount.get());
+        stats.put("abandonedRequests", abandonedCount.get());
+        stats.put("averageBatchSize", avgBatchSize);
+        stats.put("batchFillRatio", maxBatchSize == 0 ? 0.0 : avgBatchSize / maxBatchSize);
+        stats.put("queued", queue == null ? 0 : queue.size());
+        stats.put("inFlightBatches", inFlight == null ? 0 : maxInFlight - inFlight.availablePermits());
+        return stats;
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                // Chờ request đầu tiên, sau đó gom thêm cho tới khi đủ batch hoặc hết max-wait
+                PendingRequest first = queue.take();
+                if (first.future().isDone()) {
+                    abandonedCount.incrementAndGet();
+                    continue;
+                }
+                List<PendingRequest> batch = new ArrayList<>(maxBatchSize);
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingRequest next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next.future().isDone()) {
+                        abandonedCount.incrementAndGet();
+                        continue;
+                    }
+                    batch.add(next);
+                }
+
+                // Hết permit thì dispatcher dừng lấy thêm -> queue đầy -> caller mới bị từ chối
+                inFlight.acquire();
+                try {
+                    sender.execute(() -> {
+                        try {
+                            send(batch);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("TF Serving batch dispatcher error: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void send(List<PendingRequest> batch) {
+        // Nhiều request cùng user trong 1 batch chỉ gửi 1 instance; bỏ qua request mà caller đã timeout/cancel
+        Map<Long, List<CompletableFuture<List<Long>>>> waiters = new LinkedHashMap<>();
+        for (PendingRequest request : batch) {
+            if (request.future().isDone()) {
+                abandonedCount.incrementAndGet();
+                continue;
+            }
+            waiters.computeIfAbsent(request.userId(), id -> new ArrayList<>()).add(request.future());
+        }
+        if (waiters.isEmpty()) {
+            return;
+        }
+        List<Long> userIds = new ArrayList<>(waiters.keySet());
+
+        batchCount.incrementAndGet();
+        batchedUserCount.addAndGet(userIds.size());
+
+        try {
+            List<List<Long>> results = predict(userIds);
+            for (int i = 0; i < userIds.size(); i++) {
+                List<Long> productIds = results.get(i);
+                waiters.get(userIds.get(i)).forEach(f -> f.complete(productIds));
+            }
+        } catch (Exception e) {
+            failedBatchCount.incrementAndGet();
+            log.error("TF Serving batch of {} users failed: {}", userIds.size(), e.getMessage());
+            waiters.values().forEach(list -> list.forEach(f -> f.completeExceptionally(e)));
+        }
+    }
+
+    private record PendingRequest(Long userId, CompletableFuture<List<Long>> future) {
+    }
+}
@@ -0,0 +1,82 @@
+package com.ecommerce.recommendation;
+
+/**
+ * Chọn top-k (id, score) bằng min-heap kích thước k trên mảng primitive: O(n log k), không boxing.
+ * Không thread-safe - mỗi lần tính dùng 1 instance.
+ */
+public final class TopKSelector {
+
+    private final long[] ids;
+    private final float[] scores;
+    private int size;
+
+    public TopKSelector(int k) {
+        this.ids = new long[Math.max(0, k)];
+        this.scores = new float[Math.max(0, k)];
+    }
+
+    public void offer(long id, float score) {
+        if (size < ids.length) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (size > 0 && score > scores[0]) {
+            // heap[0] là điểm thấp nhất trong top-k hiện tại
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(size);
+        }
+    }
+
+    /**
+     * Kết quả theo điểm giảm dần. Sau khi gọi, selector không dùng lại được.
+     */
+    public long[] result() {
+        long[] result = new long[size];
+        // Pop lần lượt phần tử nhỏ nhất -> ghi ngược từ cuối để được thứ tự giảm dần
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = ids[0];
+            ids[0] = ids[i];
+            scores[0] = scores[i];
+            siftDown(i);
+        }
+        size = 0;
+        return result;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[parent] <= scores[index]) {
+                return;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int heapSize) {
+        int index = 0;
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= heapSize) {
+                return;
+            }
+            int smallest = left + 1 < heapSize && scores[left + 1] < scores[left] ? left + 1 : left;
+            if (scores[index] <= scores[smallest]) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
@@ -1,8 +1,10 @@
 package com.ecommerce.repository;
 
 import com.ecommerce.entity.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import java.util.Collection;
 import java.util.List;
@@ -12,4 +14,35 @@ public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpec
 
     // For Hybrid Recommendation
     List<Product> findTop10ByCategoryIdAndIdNotIn(Long categoryId, Collection<Long> excludedIds);
+
+    // Chỉ lấy cặp (productId, categoryId), không load entity
+    @Query("SELECT p.id, p.category.id FROM Product p WHERE p.id IN :ids")
+    List<Object[]> findCategoryIdsByIdIn(Collection<Long> ids);
+
+    @Query("SELECT p.id, c.id FROM Product p LEFT JOIN p.category c")
+    List<Object[]> findAllCategoryIds();
+
+    // Keyset page cho bulk reindex: chỉ các cột cần cho ProductDocument, không load images/variants
+    // (id, name, description, basePrice, categoryId, categoryName, averageRating, reviewCount)
+    @Query("SELECT p.id, p.name, p.description, p.basePrice, c.id, c.name, p.averageRating, p.reviewCount " +
+            "FROM Product p LEFT JOIN p.category c WHERE p.id > :afterId ORDER BY p.id")
+    List<Object[]> findSearchRowsAfter(Long afterId, Pageable pageable);
+
+    @Query("SELECT p.id, p.name, p.description, p.basePrice, c.id, c.name, p.averageRating, p.reviewCount " +
+            "FROM Product p LEFT JOIN p.category c WHERE p.id IN :ids")
+    List<Object[]> findSearchRowsByIdIn(Collection<Long> ids);
+
+    // (productId, name) cho prefix index autocomplete
+    @Query("SELECT p.id, p.name FROM Product p")
+    List<Object[]> findAllNames();
+
+    // (productId, minPrice, maxPrice, tổng tồn kho) theo variant
+    @Query("SELECT v.product.id, MIN(v.price), MAX(v.price), SUM(v.stockQuantity) " +
+            "FROM ProductVariant v WHERE v.product.id IN :ids GROUP BY v.product.id")
+    List<Object[]> findVariantStatsByProductIdIn(Collection<Long> ids);
+
+    // (productId, imageUrl) của ảnh đầu tiên mỗi sản phẩm
+    @Query("SELECT i.product.id, i.imageUrl FROM ProductImage i WHERE i.id IN " +
+            "(SELECT MIN(i2.id) FROM ProductImage i2 WHERE i2.product.id IN :ids GROUP BY i2.product.id)")
+    List<Object[]> findThumbnailsByProductIdIn(Collection<Long> ids);
 }
\ No newline at end of file
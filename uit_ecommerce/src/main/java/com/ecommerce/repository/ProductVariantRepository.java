@@ -2,6 +2,13 @@ package com.ecommerce.repository;
 
 import com.ecommerce.entity.ProductVariant;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface ProductVariantRepository extends JpaRepository<ProductVariant, Long> {
+
+    @Query("SELECT DISTINCT v.product.id FROM ProductVariant v WHERE v.id IN :ids")
+    List<Long> findProductIdsByIdIn(Collection<Long> ids);
 }
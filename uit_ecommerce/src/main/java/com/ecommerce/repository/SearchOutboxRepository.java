@@ -0,0 +1,16 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.entity.SearchOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SearchOutboxRepository extends JpaRepository<SearchOutbox, Long> {
+
+    // Lấy batch cũ nhất và khóa lại; SKIP LOCKED -> nhiều node backend drain song song không giẫm lên nhau
+    @Query(value = "SELECT * FROM search_outbox ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<SearchOutbox> lockOldest(int limit);
+}
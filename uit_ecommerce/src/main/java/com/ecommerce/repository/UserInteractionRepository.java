@@ -1,16 +1,34 @@
 package com.ecommerce.repository;
 
 import com.ecommerce.entity.UserInteraction;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface UserInteractionRepository extends JpaRepository<UserInteraction, Long> {
-    // API này sẽ dùng để xuất dữ liệu cho Python Service sau này
-    @Query("SELECT ui FROM UserInteraction ui ORDER BY ui.timestamp DESC")
-    List<UserInteraction> findAllDataForTraining();
+    // Get recent interactions for Hybrid Recommendation (số dòng theo pageable)
+    List<UserInteraction> findByUserIdOrderByTimestampDesc(Long userId, Pageable pageable);
 
-    // Get recent interactions for Hybrid Recommendation
-    List<UserInteraction> findTop10ByUserIdOrderByTimestampDesc(Long userId);
+    // User có tương tác gần đây (keyset pagination theo userId) - dùng cho precompute gợi ý
+    @Query("SELECT DISTINCT ui.userId FROM UserInteraction ui " +
+            "WHERE ui.timestamp >= :since AND ui.userId > :afterUserId ORDER BY ui.userId")
+    List<Long> findActiveUserIds(LocalDateTime since, Long afterUserId, Pageable pageable);
+
+    // Đọc lại interaction theo thứ tự ID (keyset) để warm-up index in-memory khi khởi động
+    List<UserInteraction> findByIdGreaterThanAndTimestampAfterOrderByIdAsc(Long afterId, LocalDateTime since,
+                                                                         Pageable pageable);
+
+    // ID lớn nhất hiện có: mốc cắt cho rebuild bảng xếp hạng phổ biến
+    @Query("SELECT COALESCE(MAX(ui.id), 0) FROM UserInteraction ui")
+    Long findMaxId();
+
+    // Điểm phổ biến có time-decay: SUM(rating * e^(-tuổi / tau)), tính ngay trong Postgres (chỉ các dòng id <= maxId)
+    @Query(value = "SELECT ui.product_id, " +
+            "CAST(SUM(ui.rating_value * EXP(-EXTRACT(EPOCH FROM (:now - ui.timestamp)) / :tauSeconds)) AS double precision) " +
+            "FROM user_interactions ui WHERE ui.timestamp >= :since AND ui.id <= :maxId GROUP BY ui.product_id",
+            nativeQuery = true)
+    List<Object[]> sumDecayedScoresByProduct(LocalDateTime now, LocalDateTime since, double tauSeconds, Long maxId);
 }
\ No newline at end of file
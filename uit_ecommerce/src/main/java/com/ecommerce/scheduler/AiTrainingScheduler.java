@@ -1,15 +1,18 @@
 package com.ecommerce.scheduler;
 
+import com.ecommerce.recommendation.ModelVersionChangedEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -25,12 +28,14 @@ import java.util.Map;
 public class AiTrainingScheduler {
 
     private final RestTemplate restTemplate;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Value("${application.ai.service.base-url}")
     private String aiServiceBaseUrl;
 
     private LocalDateTime lastCheckTime;
     private String lastModelStatus;
+    private volatile String lastModelVersion;
 
     /**
      * Scheduled model status check - runs based on cron expression.
@@ -42,6 +47,14 @@ public class AiTrainingScheduler {
         checkHealth();
     }
 
+    /**
+     * Poll model version định kỳ để phát hiện model mới (TF Serving hot-reload sau khi train).
+     */
+    @Scheduled(initialDelay = 10_000, fixedDelayString = "${application.ai.version-check-ms:300000}")
+    public void pollModelVersion() {
+        checkHealth();
+    }
+
     /**
      * Manual training trigger.
      * Note: TensorFlow Serving doesn't support online training.
@@ -83,6 +96,7 @@ public class AiTrainingScheduler {
 
                 Map<String, Object> body = response.getBody();
                 log.info("TF Serving model status: {}", body);
+                detectVersionChange(body);
 
                 return Map.of(
                         "aiServiceStatus", "UP",
@@ -110,6 +124,35 @@ public class AiTrainingScheduler {
         }
     }
 
+    public String getLastModelVersion() {
+        return lastModelVersion;
+    }
+
+    /**
+     * So sánh version AVAILABLE mới nhất với lần check trước, publish event nếu đổi.
+     * Body mẫu: {"model_version_status": [{"version": "3", "state": "AVAILABLE", ...}]}
+     */
+    private void detectVersionChange(Map<String, Object> body) {
+        if (!(body.get("model_version_status") instanceof List<?> statuses)) {
+            return;
+        }
+
+        String latest = statuses.stream()
+                .filter(Map.class::isInstance)
+                .map(Map.class::cast)
+                .filter(status -> "AVAILABLE".equals(status.get("state")))
+                .map(status -> String.valueOf(status.get("version")))
+                .max((a, b) -> Long.compare(Long.parseLong(a), Long.parseLong(b)))
+                .orElse(null);
+
+        if (latest != null && !latest.equals(lastModelVersion)) {
+            String previous = lastModelVersion;
+            lastModelVersion = latest;
+            log.info("TF Serving model version changed: {} -> {}", previous, latest);
+            eventPublisher.publishEvent(new ModelVersionChangedEvent(previous, latest));
+        }
+    }
+
     /**
      * Get model metadata from TensorFlow Serving.
      */
@@ -0,0 +1,162 @@
+package com.ecommerce.scheduler;
+
+import com.ecommerce.recommendation.ModelVersionChangedEvent;
+import com.ecommerce.recommendation.RecommendationStore;
+import com.ecommerce.repository.UserInteractionRepository;
+import com.ecommerce.service.RecommendationService;
+import com.ecommerce.service.RecommendationService.ComputedRecommendations;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Precompute top-N gợi ý cho các user active và lưu vào Redis (RecommendationStore).
+ * Chạy lại khi TF Serving load model version mới và định kỳ theo cron (làm mới phần content-based).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "application.recommendation.precompute.enabled", havingValue = "true", matchIfMissing = true)
+public class RecommendationPrecomputeJob {
+
+    private final RecommendationService recommendationService;
+    private final RecommendationStore recommendationStore;
+    private final UserInteractionRepository userInteractionRepository;
+
+    @Value("${application.recommendation.precompute.batch-size:64}")
+    private int batchSize;
+
+    @Value("${application.recommendation.precompute.active-days:30}")
+    private int activeDays;
+
+    // Số user tính đồng thời: mỗi user có thể cần 1-2 connection (warm-up + content stage), giữ dưới pool size
+    @Value("${application.recommendation.precompute.concurrency:4}")
+    private int concurrency;
+
+    // Job chạy trên thread riêng, không chiếm thread của scheduler/event publisher
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("recommendation-precompute").factory());
+    // User trong 1 batch chạy song song (tối đa concurrency) -> TfServingClient gom lại thành 1 lần predict
+    private final ExecutorService userExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        userExecutor.shutdownNow();
+    }
+
+    @EventListener
+    public void onModelVersionChanged(ModelVersionChangedEvent event) {
+        // Lần poll đầu sau khi khởi động luôn báo (null -> v): Redis đã có gợi ý của v thì không cần tính lại
+        if (event.previousVersion() == null && event.newVersion().equals(recommendationStore.getCurrentVersion())) {
+            log.info("Model version {} already precomputed, skipping", event.newVersion());
+            return;
+        }
+        log.info("Model version {} detected, refreshing precomputed recommendations", event.newVersion());
+        submit(event.newVersion());
+    }
+
+    @Scheduled(cron = "${application.recommendation.precompute.cron}")
+    public void scheduledRefresh() {
+        String version = recommendationStore.getCurrentVersion();
+        if (version != null) {
+            submit(version);
+        }
+    }
+
+    private void submit(String version) {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Precompute already running, skipping request for version {}", version);
+            return;
+        }
+        try {
+            if (!recommendationStore.tryClaimPrecompute(version)) {
+                log.info("Precompute for version {} claimed by another node, skipping", version);
+                running.set(false);
+                return;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to claim precompute for version {}: {}", version, e.getMessage());
+            running.set(false);
+            return;
+        }
+        jobExecutor.execute(() -> {
+            try {
+                precompute(version);
+            } catch (Exception e) {
+                log.error("Precompute for model version {} failed: {}", version, e.getMessage());
+                recommendationStore.releasePrecomputeClaim(version);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private void precompute(String version) {
+        long start = System.currentTimeMillis();
+        LocalDateTime since = LocalDateTime.now().minusDays(activeDays);
+        long lastUserId = 0L;
+        int total = 0;
+        int skipped = 0;
+        Semaphore permits = new Semaphore(concurrency);
+
+        while (true) {
+            List<Long> userIds = userInteractionRepository.findActiveUserIds(
+                    since, lastUserId, PageRequest.of(0, batchSize));
+            if (userIds.isEmpty()) {
+                break;
+            }
+
+            Map<Long, CompletableFuture<ComputedRecommendations>> futures = new LinkedHashMap<>();
+            for (Long userId : userIds) {
+                permits.acquireUninterruptibly();
+                futures.put(userId, CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return recommendationService.computeRecommendations(userId);
+                    } finally {
+                        permits.release();
+                    }
+                }, userExecutor));
+            }
+
+            // Kết quả thiếu (stage trễ deadline) không lưu: request path tự tính live khi cache miss
+            Map<Long, List<Long>> batch = new LinkedHashMap<>();
+            for (Map.Entry<Long, CompletableFuture<ComputedRecommendations>> entry : futures.entrySet()) {
+                ComputedRecommendations result = entry.getValue().join();
+                if (result.complete()) {
+                    batch.put(entry.getKey(), result.productIds());
+                } else {
+                    skipped++;
+                }
+            }
+            if (!batch.isEmpty()) {
+                recommendationStore.putAll(version, batch);
+            }
+
+            total += batch.size();
+            lastUserId = userIds.get(userIds.size() - 1);
+        }
+
+        // Chỉ chuyển request path sang version mới khi đã ghi xong toàn bộ
+        recommendationStore.activateVersion(version);
+        log.info("Precomputed recommendations for {} users (model version {}, {} skipped after missing the deadline) in {} ms",
+                total, version, skipped, System.currentTimeMillis() - start);
+    }
+}
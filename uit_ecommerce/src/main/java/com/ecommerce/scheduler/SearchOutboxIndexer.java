@@ -0,0 +1,107 @@
+package com.ecommerce.scheduler;
+
+import com.ecommerce.cache.ProductCacheInvalidator;
+import com.ecommerce.elasticsearch.document.ProductDocument;
+import com.ecommerce.entity.SearchOutbox;
+import com.ecommerce.repository.SearchOutboxRepository;
+import com.ecommerce.service.ProductBulkIndexer;
+import com.ecommerce.service.ProductIndexManager;
+import com.ecommerce.service.ProductSuggestService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Drain bảng search_outbox sang Elasticsearch gần real-time.
+ * Mỗi lượt khóa 1 batch dòng cũ nhất (SKIP LOCKED), gộp theo productId, index lại từ DB trong 1 bulk
+ * (sản phẩm đã bị xóa khỏi DB thì xóa document) rồi xóa các dòng đã xử lý trong cùng transaction,
+ * sau đó xóa các entry cache listing/search chứa các sản phẩm này.
+ * ES lỗi -> rollback, các dòng còn nguyên và được thử lại ở lượt sau.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SearchOutboxIndexer {
+
+    private final SearchOutboxRepository searchOutboxRepository;
+    private final ProductBulkIndexer productBulkIndexer;
+    private final ProductIndexManager productIndexManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ProductSuggestService productSuggestService;
+    private final ProductCacheInvalidator productCacheInvalidator;
+
+    @Value("${application.search.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${application.search.outbox.poll-interval-ms:1000}")
+    public void drain() {
+        try {
+            // Drain tới khi batch không đầy (hết backlog)
+            Integer processed;
+            do {
+                processed = transactionTemplate.execute(status -> drainBatch());
+            } while (processed != null && processed >= batchSize);
+        } catch (Exception e) {
+            log.warn("Search outbox drain failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    private int drainBatch() {
+        List<SearchOutbox> entries = searchOutboxRepository.lockOldest(batchSize);
+        if (entries.isEmpty()) {
+            return 0;
+        }
+
+        // Gộp theo productId (entries đã sort theo id tăng dần); index lại từ DB nên chỉ cần mỗi ID 1 lần
+        Set<Long> productIds = new LinkedHashSet<>();
+        entries.forEach(entry -> productIds.add(entry.getProductId()));
+
+        // Trạng thái cũ (tên/category/giá trước thay đổi) để xóa cả cache listing mà sản phẩm vừa rời khỏi
+        List<ProductDocument> previous = productBulkIndexer.findIndexed(productIds);
+        // Sản phẩm không còn trong DB bị xóa khỏi index ngay trong indexProducts
+        List<ProductDocument> indexed = productBulkIndexer.indexProducts(productIds);
+        List<ProductDocument> changed = new ArrayList<>(previous);
+        changed.addAll(indexed);
+        // Đang rebuild index -> các sản phẩm này được replay vào index mới trước khi alias chuyển sang
+        productIndexManager.recordChanged(productIds);
+
+        searchOutboxRepository.deleteAllInBatch(entries);
+
+        // Bulk chạy với refresh=wait_for -> thay đổi đã search được, xóa các entry listing/search liên quan
+        productCacheInvalidator.evictListings(changed);
+
+        // Chỉ rebuild prefix index autocomplete khi tập tên thay đổi (thêm/xóa/đổi tên), không phải khi đổi giá/tồn kho
+        if (namesChanged(previous, indexed)) {
+            productSuggestService.markDirty();
+        }
+        log.debug("Search outbox: {} entries -> {} indexed, {} removed",
+                entries.size(), indexed.size(), productIds.size() - indexed.size());
+        return entries.size();
+    }
+
+    private static boolean namesChanged(List<ProductDocument> previous, List<ProductDocument> indexed) {
+        if (previous.size() != indexed.size()) {
+            return true;
+        }
+        Map<Long, String> previousNames = new HashMap<>();
+        previous.forEach(document -> previousNames.put(document.getId(), document.getName()));
+        for (ProductDocument document : indexed) {
+            if (!previousNames.containsKey(document.getId())
+                    || !Objects.equals(previousNames.get(document.getId()), document.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
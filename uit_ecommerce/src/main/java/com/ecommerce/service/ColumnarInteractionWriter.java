@@ -0,0 +1,123 @@
+package com.ecommerce.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+/**
+ * Ghi interaction theo định dạng cột nhị phân, chia chunk và nén deflate (zlib) từng chunk.
+ *
+ * Format (little-endian):
+ * - Header: magic "UIX1"
+ * - Mỗi chunk: int32 rows, int32 rawLength, int32 compressedLength, byte[compressedLength]
+ *   Dữ liệu sau khi giải nén: int64 userIds[rows], int64 productIds[rows], int8 typeCodes[rows],
+ *   float32 ratings[rows], int64 timestamps[rows] (epoch millis, LocalDateTime coi như UTC)
+ * - Kết thúc: chunk có rows = 0
+ * userId = 0 nghĩa là null; typeCode xem TYPE_*.
+ */
+final class ColumnarInteractionWriter {
+
+    static final byte[] MAGIC = "UIX1".getBytes(StandardCharsets.US_ASCII);
+
+    static final byte TYPE_UNKNOWN = -1;
+    static final byte TYPE_VIEW = 0;
+    static final byte TYPE_CART = 1;
+    static final byte TYPE_PURCHASE = 2;
+
+    private static final int BYTES_PER_ROW = Long.BYTES + Long.BYTES + Byte.BYTES + Float.BYTES + Long.BYTES;
+
+    private final OutputStream output;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    private final long[] userIds;
+    private final long[] productIds;
+    private final byte[] typeCodes;
+    private final float[] ratings;
+    private final long[] timestamps;
+    private int rows;
+
+    private final ByteBuffer raw;
+    private byte[] compressed;
+
+    ColumnarInteractionWriter(OutputStream output, int chunkRows) throws IOException {
+        this.output = output;
+        userIds = new long[chunkRows];
+        productIds = new long[chunkRows];
+        typeCodes = new byte[chunkRows];
+        ratings = new float[chunkRows];
+        timestamps = new long[chunkRows];
+        raw = ByteBuffer.allocate(chunkRows * BYTES_PER_ROW).order(ByteOrder.LITTLE_ENDIAN);
+        compressed = new byte[raw.capacity() / 2];
+        output.write(MAGIC);
+    }
+
+    static byte typeCode(String interactionType) {
+        if (interactionType == null) {
+            return TYPE_UNKNOWN;
+        }
+        return switch (interactionType) {
+            case "VIEW" -> TYPE_VIEW;
+            case "CART" -> TYPE_CART;
+            case "PURCHASE" -> TYPE_PURCHASE;
+            default -> TYPE_UNKNOWN;
+        };
+    }
+
+    void write(long userId, long productId, byte typeCode, float rating, long timestampMillis) throws IOException {
+        userIds[rows] = userId;
+        productIds[rows] = productId;
+        typeCodes[rows] = typeCode;
+        ratings[rows] = rating;
+        timestamps[rows] = timestampMillis;
+        if (++rows == userIds.length) {
+            flushChunk();
+        }
+    }
+
+    /**
+     * Ghi chunk còn dở và chunk kết thúc. Không đóng output.
+     */
+    void finish() throws IOException {
+        if (rows > 0) {
+            flushChunk();
+        }
+        writeChunkHeader(0, 0, 0);
+        output.flush();
+        deflater.end();
+    }
+
+    private void flushChunk() throws IOException {
+        raw.clear();
+        for (int i = 0; i < rows; i++) raw.putLong(userIds[i]);
+        for (int i = 0; i < rows; i++) raw.putLong(productIds[i]);
+        raw.put(typeCodes, 0, rows);
+        for (int i = 0; i < rows; i++) raw.putFloat(ratings[i]);
+        for (int i = 0; i < rows; i++) raw.putLong(timestamps[i]);
+
+        deflater.reset();
+        deflater.setInput(raw.array(), 0, raw.position());
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                byte[] grown = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, grown, 0, compressedLength);
+                compressed = grown;
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+
+        writeChunkHeader(rows, raw.position(), compressedLength);
+        output.write(compressed, 0, compressedLength);
+        rows = 0;
+    }
+
+    private void writeChunkHeader(int chunkRows, int rawLength, int compressedLength) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(3 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(chunkRows).putInt(rawLength).putInt(compressedLength);
+        output.write(header.array());
+    }
+}
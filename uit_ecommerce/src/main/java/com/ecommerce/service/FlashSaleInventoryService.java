@@ -0,0 +1,447 @@
+package com.ecommerce.service;
+
+import com.ecommerce.cache.ProductCacheInvalidator;
+import com.ecommerce.entity.ProductVariant;
+import com.ecommerce.repository.ProductVariantRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Tồn kho cho variant flash sale (ProductVariant.flashSale): giữ chỗ trên Redis thay vì khóa dòng product_variants.
+ * - Counter {flash_stock}:v:{variantId} = số còn bán được. placeOrder giữ chỗ cả đơn bằng 1 Lua script
+ *   (kiểm tra đủ hàng cho mọi dòng rồi mới trừ -> all-or-nothing) và cộng số đã trừ vào hash pending.
+ *   Transaction đơn hàng rollback -> hoàn lại ngay; hủy đơn -> hoàn lại sau khi commit.
+ * - Write-back: định kỳ lấy hash pending (đổi tên thành processing), trừ vào DB trong 1 JDBC batch rồi xóa processing.
+ * - Reconcile: counter phải bằng stock DB - pending - processing; lệch (mất key Redis, admin sửa tồn kho...) thì ghi đè.
+ * Write-back, reconcile và nạp counter chạy dưới cùng 1 lock Redis nên không thấy trạng thái nửa vời của nhau.
+ * Mọi key dùng hash tag {flash_stock} -> cùng slot, chạy được Lua nhiều key trên Redis Cluster.
+ * Sự cố giữa chừng (node chết trước khi hoàn chỗ, lỗi sau khi DB commit write-back) chỉ làm bán thiếu, không bán vượt.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FlashSaleInventoryService {
+
+    private static final String PREFIX = "{flash_stock}:";
+    private static final String COUNTER_PREFIX = PREFIX + "v:";
+    private static final String PENDING_KEY = PREFIX + "pending";
+    private static final String PROCESSING_KEY = PREFIX + "processing";
+    private static final String VARIANTS_KEY = PREFIX + "variants";
+    private static final String LOCK_KEY = PREFIX + "lock";
+    private static final long LOCK_POLL_MILLIS = 20;
+
+    // KEYS: pending, counter...; ARGV: variantId..., quantity...
+    // Trả về 0 nếu giữ chỗ được, i nếu dòng i thiếu hàng, -i nếu counter dòng i chưa được nạp
+    private static final RedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>("""
+            local n = #KEYS - 1
+            for i = 1, n do
+              local stock = redis.call('get', KEYS[1 + i])
+              if not stock then return -i end
+              if tonumber(stock) < tonumber(ARGV[n + i]) then return i end
+            end
+            for i = 1, n do
+              redis.call('decrby', KEYS[1 + i], ARGV[n + i])
+              redis.call('hincrby', KEYS[1], ARGV[i], ARGV[n + i])
+            end
+            return 0
+            """, Long.class);
+
+    // KEYS: pending, counter...; ARGV: variantId..., quantity...
+    // Counter chưa có -> chỉ trừ pending, lần nạp sau tự tính ra số đúng
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            local n = #KEYS - 1
+            for i = 1, n do
+              if redis.call('exists', KEYS[1 + i]) == 1 then
+                redis.call('incrby', KEYS[1 + i], ARGV[n + i])
+              end
+              redis.call('hincrby', KEYS[1], ARGV[i], -tonumber(ARGV[n + i]))
+            end
+            return n
+            """, Long.class);
+
+    // KEYS: pending, processing; processing còn sót (lượt trước lỗi) thì xử lý lại nó trước
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TAKE_PENDING_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('exists', KEYS[2]) == 0 then
+              if redis.call('exists', KEYS[1]) == 0 then return {} end
+              redis.call('rename', KEYS[1], KEYS[2])
+            end
+            return redis.call('hgetall', KEYS[2])
+            """, List.class);
+
+    // KEYS: pending, processing, variants, counter...; ARGV: onlyMissing, variantId..., dbStock...
+    // Trả về số counter đã ghi đè
+    private static final RedisScript<Long> SYNC_SCRIPT = new DefaultRedisScript<>("""
+            local n = #KEYS - 3
+            local changed = 0
+            for i = 1, n do
+              local current = redis.call('get', KEYS[3 + i])
+              if ARGV[1] == '0' or not current then
+                local id = ARGV[1 + i]
+                local expected = tonumber(ARGV[1 + n + i])
+                    - tonumber(redis.call('hget', KEYS[1], id) or 0)
+                    - tonumber(redis.call('hget', KEYS[2], id) or 0)
+                expected = math.max(expected, 0)
+                if tonumber(current) ~= expected then
+                  redis.call('set', KEYS[3 + i], expected)
+                  changed = changed + 1
+                end
+                redis.call('sadd', KEYS[3], id)
+              end
+            end
+            return changed
+            """, Long.class);
+
+    // KEYS: pending, processing, variants, counter...; ARGV: variantId...
+    // Variant không còn flash sale: bỏ counter khi không còn số chờ ghi về DB
+    private static final RedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>("""
+            local removed = 0
+            for i = 1, #ARGV do
+              local id = ARGV[i]
+              if tonumber(redis.call('hget', KEYS[1], id) or 0) == 0
+                  and tonumber(redis.call('hget', KEYS[2], id) or 0) == 0 then
+                redis.call('del', KEYS[3 + i])
+                redis.call('srem', KEYS[3], id)
+                removed = removed + 1
+              end
+            end
+            return removed
+            """, Long.class);
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private static final String STOCK_SQL =
+            "SELECT id, stock_quantity FROM product_variants WHERE flash_sale = true";
+    private static final String STOCK_BY_IDS_SQL = STOCK_SQL + " AND id IN (:ids)";
+
+    private final StringRedisTemplate redisTemplate;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final InventoryService inventoryService;
+    private final SearchOutboxService searchOutboxService;
+    private final ProductCacheInvalidator productCacheInvalidator;
+    private final ProductVariantRepository productVariantRepository;
+
+    @Value("${application.inventory.flash-sale.enabled:true}")
+    private boolean enabled;
+
+    @Value("${application.inventory.flash-sale.lock-ttl-ms:30000}")
+    private long lockTtlMs;
+
+    @Value("${application.inventory.flash-sale.lock-wait-ms:2000}")
+    private long lockWaitMs;
+
+    /**
+     * Variant này có đi qua Redis không (tắt chế độ flash sale -> mọi variant trừ kho trực tiếp trên DB).
+     */
+    public boolean handles(ProductVariant variant) {
+        return enabled && variant.isFlashSale();
+    }
+
+    /**
+     * Bật/tắt flash sale cho 1 variant (admin). Bật -> nạp counter ngay từ DB (stock - số chờ ghi về DB);
+     * tắt -> bỏ counter nếu không còn số chờ ghi về DB (còn thì reconcile dọn sau khi write-back xong).
+     * Đơn đang chạy dở trừ kho kiểu cũ lúc đổi cờ được reconcile lượt sau sửa lại.
+     *
+     * @return số còn bán được trên Redis (null nếu tắt hoặc chưa nạp được)
+     */
+    public Long setFlashSale(Long variantId, boolean flashSale) {
+        transactionTemplate.executeWithoutResult(status -> {
+            ProductVariant variant = productVariantRepository.findById(variantId)
+                    .orElseThrow(() -> new RuntimeException("Variant not found"));
+            variant.setFlashSale(flashSale);
+        });
+        if (!enabled) {
+            return null;
+        }
+        String token = awaitLock();
+        if (token == null) {
+            // Không lấy được lock: bật -> đơn đầu tiên tự nạp counter, tắt -> reconcile dọn
+            log.warn("Flash sale lock busy, counter of variant {} will be synced later", variantId);
+            return null;
+        }
+        try {
+            List<Long> ids = List.of(variantId);
+            if (flashSale) {
+                sync(queryStocks(STOCK_BY_IDS_SQL, Map.of("ids", ids)), false);
+                String stock = redisTemplate.opsForValue().get(COUNTER_PREFIX + variantId);
+                return stock != null ? Long.valueOf(stock) : null;
+            }
+            redisTemplate.execute(REMOVE_SCRIPT, syncKeys(ids), String.valueOf(variantId));
+            return null;
+        } finally {
+            unlock(token);
+        }
+    }
+
+    /**
+     * Giữ chỗ cả đơn trên Redis. Thiếu hàng -> InventoryService.OutOfStockException.
+     * Phải chạy trong transaction đặt hàng: rollback thì chỗ đã giữ được hoàn lại.
+     *
+     * @param quantities variantId -> số lượng
+     */
+    public void reserve(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Flash sale reservation requires an active transaction");
+        }
+        Map<Long, Integer> lines = new TreeMap<>(quantities);
+        List<Long> ids = new ArrayList<>(lines.keySet());
+
+        long result = runReserve(lines);
+        if (result < 0) {
+            // Counter chưa có trên Redis (lần bán đầu tiên / Redis mất dữ liệu) -> nạp từ DB rồi thử lại
+            loadMissing(ids);
+            result = runReserve(lines);
+            if (result < 0) {
+                throw new RuntimeException("Flash sale stock is not available, please try again");
+            }
+        }
+        if (result > 0) {
+            throw new InventoryService.OutOfStockException(ids.get((int) result - 1));
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    releaseNow(lines);
+                }
+            }
+        });
+    }
+
+    /**
+     * Hoàn chỗ (hủy đơn) sau khi transaction hủy đơn commit.
+     *
+     * @param quantities variantId -> số lượng
+     */
+    public void release(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> lines = new TreeMap<>(quantities);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            releaseNow(lines);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                releaseNow(lines);
+            }
+        });
+    }
+
+    /**
+     * Ghi số đã bán/hoàn trên Redis về product_variants (1 batch / lượt).
+     */
+    @Scheduled(fixedDelayString = "${application.inventory.flash-sale.write-back-ms:1000}")
+    public void writeBack() {
+        String token = tryLock();
+        if (token == null) {
+            return; // node khác đang write-back/reconcile
+        }
+        try {
+            Map<Long, Integer> deltas = takePending();
+            if (!deltas.isEmpty()) {
+                // increment với số âm: stock_quantity = stock_quantity - delta (delta < 0 khi hoàn nhiều hơn bán)
+                Map<Long, Integer> increments = new HashMap<>();
+                deltas.forEach((id, delta) -> increments.put(id, -delta));
+                transactionTemplate.executeWithoutResult(status -> {
+                    inventoryService.increment(increments);
+                    List<Long> productIds = productVariantRepository.findProductIdsByIdIn(deltas.keySet());
+                    searchOutboxService.productsChanged(productIds);
+                    productCacheInvalidator.evictProductsAfterCommit(productIds);
+                });
+                log.debug("Flash sale write-back: {} variant(s)", deltas.size());
+            }
+            // DB đã commit (hoặc processing chỉ còn dòng 0) -> bỏ processing
+            redisTemplate.delete(PROCESSING_KEY);
+        } catch (Exception e) {
+            // processing còn nguyên -> lượt sau ghi lại
+            log.warn("Flash sale write-back failed, will retry: {}", e.getMessage());
+        } finally {
+            unlock(token);
+        }
+    }
+
+    /**
+     * Sửa counter lệch so với DB và dọn counter của variant không còn flash sale.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${application.inventory.flash-sale.reconcile-ms:60000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        String token = tryLock();
+        if (token == null) {
+            return;
+        }
+        try {
+            Map<Long, Integer> stocks = queryStocks(STOCK_SQL, Map.of());
+            long corrected = sync(stocks, false);
+
+            Set<String> loaded = redisTemplate.opsForSet().members(VARIANTS_KEY);
+            List<Long> stale = new ArrayList<>();
+            if (loaded != null) {
+                loaded.stream().map(Long::valueOf).filter(id -> !stocks.containsKey(id)).forEach(stale::add);
+            }
+            long removed = stale.isEmpty() ? 0 : redisTemplate.execute(REMOVE_SCRIPT,
+                    syncKeys(stale), stale.stream().map(String::valueOf).toArray());
+            if (corrected > 0 || removed > 0) {
+                log.info("Flash sale reconcile: {} counter(s) corrected, {} removed", corrected, removed);
+            }
+        } catch (Exception e) {
+            log.warn("Flash sale reconcile failed: {}", e.getMessage());
+        } finally {
+            unlock(token);
+        }
+    }
+
+    private long runReserve(Map<Long, Integer> lines) {
+        Long result = redisTemplate.execute(RESERVE_SCRIPT, reservationKeys(lines), reservationArgs(lines));
+        return result != null ? result : 0;
+    }
+
+    private void releaseNow(Map<Long, Integer> lines) {
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, reservationKeys(lines), reservationArgs(lines));
+        } catch (RuntimeException e) {
+            // Chỗ bị giữ lại -> bán thiếu cho tới khi admin chỉnh tồn kho (không bán vượt)
+            log.error("Failed to release flash sale reservation {}: {}", lines, e.getMessage());
+        }
+    }
+
+    private void loadMissing(List<Long> ids) {
+        String token = awaitLock();
+        if (token == null) {
+            return;
+        }
+        try {
+            sync(queryStocks(STOCK_BY_IDS_SQL, Map.of("ids", ids)), true);
+        } finally {
+            unlock(token);
+        }
+    }
+
+    // Phải giữ lock: DB stock và pending/processing phải cùng 1 thời điểm (không có write-back chen giữa)
+    private long sync(Map<Long, Integer> stocks, boolean onlyMissing) {
+        if (stocks.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = new ArrayList<>(stocks.keySet());
+        List<Object> args = new ArrayList<>();
+        args.add(onlyMissing ? "1" : "0");
+        ids.forEach(id -> args.add(String.valueOf(id)));
+        ids.forEach(id -> args.add(String.valueOf(stocks.get(id))));
+        Long changed = redisTemplate.execute(SYNC_SCRIPT, syncKeys(ids), args.toArray());
+        return changed != null ? changed : 0;
+    }
+
+    private Map<Long, Integer> queryStocks(String sql, Map<String, ?> params) {
+        Map<Long, Integer> stocks = new TreeMap<>();
+        jdbcTemplate.query(sql, params, rs -> {
+            stocks.put(rs.getLong(1), rs.getInt(2));
+        });
+        return stocks;
+    }
+
+    private Map<Long, Integer> takePending() {
+        List<?> raw = redisTemplate.execute(TAKE_PENDING_SCRIPT, List.of(PENDING_KEY, PROCESSING_KEY));
+        Map<Long, Integer> deltas = new TreeMap<>();
+        if (raw == null) {
+            return deltas;
+        }
+        // HGETALL: field, value, field, value...
+        for (int i = 0; i + 1 < raw.size(); i += 2) {
+            int delta = Integer.parseInt(String.valueOf(raw.get(i + 1)));
+            if (delta != 0) {
+                deltas.put(Long.valueOf(String.valueOf(raw.get(i))), delta);
+            }
+        }
+        return deltas;
+    }
+
+    private static List<String> reservationKeys(Map<Long, Integer> lines) {
+        List<String> keys = new ArrayList<>(lines.size() + 1);
+        keys.add(PENDING_KEY);
+        lines.keySet().forEach(id -> keys.add(COUNTER_PREFIX + id));
+        return keys;
+    }
+
+    private static Object[] reservationArgs(Map<Long, Integer> lines) {
+        List<Object> args = new ArrayList<>(lines.size() * 2);
+        lines.keySet().forEach(id -> args.add(String.valueOf(id)));
+        lines.values().forEach(quantity -> args.add(String.valueOf(quantity)));
+        return args.toArray();
+    }
+
+    private static List<String> syncKeys(List<Long> ids) {
+        List<String> keys = new ArrayList<>(ids.size() + 3);
+        keys.add(PENDING_KEY);
+        keys.add(PROCESSING_KEY);
+        keys.add(VARIANTS_KEY);
+        ids.forEach(id -> keys.add(COUNTER_PREFIX + id));
+        return keys;
+    }
+
+    private String tryLock() {
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, token, Duration.ofMillis(lockTtlMs));
+            return Boolean.TRUE.equals(acquired) ? token : null;
+        } catch (RuntimeException e) {
+            log.debug("Flash sale lock unavailable: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private String awaitLock() {
+        long deadline = System.currentTimeMillis() + lockWaitMs;
+        do {
+            String token = tryLock();
+            if (token != null) {
+                return token;
+            }
+            try {
+                Thread.sleep(LOCK_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        } while (System.currentTimeMillis() < deadline);
+        return null;
+    }
+
+    private void unlock(String token) {
+        try {
+            redisTemplate.execute(UNLOCK_SCRIPT, List.of(LOCK_KEY), token);
+        } catch (RuntimeException e) {
+            log.debug("Failed to release flash sale lock: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.ecommerce.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+/**
+ * Export user_interactions ra CSV cho Python trainer.
+ * Đọc bằng JDBC cursor forward-only (fetch size cố định, không tạo entity) và ghi thẳng ra stream,
+ * nên bộ nhớ không phụ thuộc số dòng trong bảng.
+ * Hỗ trợ 2 định dạng: CSV và cột nhị phân nén theo chunk (nhỏ hơn và parse nhanh hơn nhiều bằng numpy).
+ * Delta mode: chỉ export các dòng có (timestamp, id) nằm trong (since, until], dùng index (timestamp, id).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class InteractionExportService {
+
+    private static final String CSV_HEADER = "user_id,product_id,interaction_type,rating_value,timestamp";
+
+    private static final String EXPORT_SQL = "SELECT user_id, product_id, interaction_type, rating_value, timestamp " +
+            "FROM user_interactions WHERE (timestamp, id) <= (?, ?) ORDER BY timestamp DESC, id DESC";
+
+    private static final String DELTA_EXPORT_SQL = "SELECT user_id, product_id, interaction_type, rating_value, timestamp " +
+            "FROM user_interactions WHERE (timestamp, id) > (?, ?) AND (timestamp, id) <= (?, ?) ORDER BY timestamp, id";
+
+    private static final String UPPER_WATERMARK_SQL = "SELECT timestamp, id FROM user_interactions " +
+            "WHERE timestamp <= ? ORDER BY timestamp DESC, id DESC LIMIT 1";
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${application.interaction.export.fetch-size:5000}")
+    private int fetchSize;
+
+    @Value("${application.interaction.export.chunk-rows:65536}")
+    private int chunkRows;
+
+    // Interaction được gán timestamp lúc log nhưng ghi DB theo batch sau đó -> watermark lùi lại 1 khoảng
+    // để dòng có timestamp cũ hơn watermark không xuất hiện sau khi đã export (bị bỏ sót ở lần delta sau)
+    @Value("${application.interaction.export.watermark-lag-ms:10000}")
+    private long watermarkLagMs;
+
+    /**
+     * Watermark cao nhất có thể export lúc này, rỗng nếu chưa có interaction nào.
+     */
+    public Optional<Watermark> findUpperWatermark() {
+        LocalDateTime upperBound = LocalDateTime.now().minus(Duration.ofMillis(watermarkLagMs));
+        return jdbcTemplate.query(UPPER_WATERMARK_SQL,
+                (rs, rowNum) -> new Watermark(rs.getObject(1, LocalDateTime.class), rs.getLong(2)),
+                Timestamp.valueOf(upperBound)).stream().findFirst();
+    }
+
+    /**
+     * Ghi interaction có watermark trong (since, until] dạng CSV vào output. Trả về số dòng đã ghi.
+     * since = null: export toàn bộ (mới nhất trước), ngược lại theo thứ tự tăng dần của watermark.
+     * Cần transaction: PostgreSQL chỉ dùng cursor (fetch size) khi autocommit tắt.
+     */
+    @Transactional(readOnly = true)
+    public long exportCsv(OutputStream output, Watermark since, Watermark until) throws IOException {
+        long start = System.currentTimeMillis();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+
+        CsvRowWriter rowWriter = new CsvRowWriter(writer);
+        streamRows(since, until, rowWriter);
+        writer.flush();
+
+        log.info("Exported {} interactions as CSV in {} ms", rowWriter.rows, System.currentTimeMillis() - start);
+        return rowWriter.rows;
+    }
+
+    /**
+     * Giống exportCsv nhưng ghi theo định dạng cột nhị phân nén (xem ColumnarInteractionWriter).
+     */
+    @Transactional(readOnly = true)
+    public long exportColumnar(OutputStream output, Watermark since, Watermark until) throws IOException {
+        long start = System.currentTimeMillis();
+        ColumnarInteractionWriter writer = new ColumnarInteractionWriter(
+                new BufferedOutputStream(output, WRITE_BUFFER_SIZE), chunkRows);
+
+        long[] rows = {0};
+        streamRows(since, until, rs -> {
+            try {
+                LocalDateTime timestamp = rs.getObject(5, LocalDateTime.class);
+                writer.write(rs.getLong(1), rs.getLong(2),
+                        ColumnarInteractionWriter.typeCode(rs.getString(3)),
+                        rs.getFloat(4),
+                        timestamp != null ? timestamp.toInstant(ZoneOffset.UTC).toEpochMilli() : 0L);
+                rows[0]++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.finish();
+
+        log.info("Exported {} interactions as columnar chunks in {} ms", rows[0], System.currentTimeMillis() - start);
+        return rows[0];
+    }
+
+    private void streamRows(Watermark since, Watermark until, RowCallbackHandler handler) throws IOException {
+        if (until == null) {
+            return;
+        }
+        try {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                        since == null ? EXPORT_SQL : DELTA_EXPORT_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(fetchSize);
+                int index = 1;
+                if (since != null) {
+                    statement.setTimestamp(index++, Timestamp.valueOf(since.timestamp()));
+                    statement.setLong(index++, since.id());
+                }
+                statement.setTimestamp(index++, Timestamp.valueOf(until.timestamp()));
+                statement.setLong(index, until.id());
+                return statement;
+            }, handler);
+        } catch (UncheckedIOException e) {
+            // Client ngắt kết nối giữa chừng
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Vị trí trong luồng interaction: (timestamp, id) tăng dần, id phân xử các dòng cùng timestamp.
+     */
+    public record Watermark(LocalDateTime timestamp, long id) implements Comparable<Watermark> {
+
+        @Override
+        public int compareTo(Watermark other) {
+            int byTimestamp = timestamp.compareTo(other.timestamp);
+            return byTimestamp != 0 ? byTimestamp : Long.compare(id, other.id);
+        }
+    }
+
+    // Xử lý trường hợp dữ liệu có chứa dấu phẩy hoặc xuống dòng
+    private static String escapeSpecialCharacters(String data) {
+        if (data == null)
+            return "";
+        if (!needsEscaping(data))
+            return data;
+        String escapedData = data.replaceAll("\\R", " ");
+        if (data.contains(",") || data.contains("\"") || data.contains("'")) {
+            data = data.replace("\"", "\"\"");
+            escapedData = "\"" + data + "\"";
+        }
+        return escapedData;
+    }
+
+    // Fast path: giá trị thông thường (VIEW/CART/PURCHASE) không cần chạy regex
+    private static boolean needsEscaping(String data) {
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c == ',' || c == '"' || c == '\'' || c < ' ' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class CsvRowWriter implements RowCallbackHandler {
+        private final Writer writer;
+        private long rows;
+
+        CsvRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            try {
+                long userId = rs.getLong(1);
+                if (!rs.wasNull()) {
+                    writer.write(Long.toString(userId));
+                }
+                writer.write(',');
+                writer.write(Long.toString(rs.getLong(2)));
+                writer.write(',');
+                writer.write(escapeSpecialCharacters(rs.getString(3)));
+                writer.write(',');
+                double rating = rs.getDouble(4);
+                writer.write(rs.wasNull() ? "null" : Double.toString(rating));
+                writer.write(',');
+                LocalDateTime timestamp = rs.getObject(5, LocalDateTime.class);
+                writer.write(timestamp != null ? timestamp.toString() : "");
+                writer.write('\n');
+                rows++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
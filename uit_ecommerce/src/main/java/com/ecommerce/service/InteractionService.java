@@ -1,13 +1,39 @@
 package com.ecommerce.service;
 
-import com.ecommerce.entity.UserInteraction;
-import com.ecommerce.repository.UserInteractionRepository;
+import com.ecommerce.recommendation.CategoryPopularityRanking;
+import com.ecommerce.recommendation.ItemCooccurrenceIndex;
+import com.ecommerce.recommendation.RecentInteractionStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
-import org.springframework.scheduling.annotation.Async;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Service;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Ghi nhận interaction của user (VIEW/CART/PURCHASE).
+ * Request thread chỉ đẩy event vào queue có giới hạn; 1 writer thread gom event theo kích thước hoặc thời gian
+ * rồi INSERT nhiều dòng trong 1 JDBC batch (UserInteraction dùng IDENTITY nên Hibernate không batch được).
+ * Khi queue đầy: VIEW bị bỏ trước, CART/PURCHASE đẩy VIEW cũ nhất ra để lấy chỗ.
+ */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class InteractionService {
@@ -16,33 +42,228 @@ public class InteractionService {
     private static final double SCORE_VIEW = 1.0;
     private static final double SCORE_ADD_TO_CART = 3.0;
     private static final double SCORE_PURCHASE = 5.0;
-    private final UserInteractionRepository repository;
 
-    @Async // Chạy ở thread riêng, không block request chính
+    private static final String INSERT_SQL = "INSERT INTO user_interactions " +
+            "(user_id, product_id, interaction_type, rating_value, timestamp) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ItemCooccurrenceIndex itemCooccurrenceIndex;
+    private final RecentInteractionStore recentInteractionStore;
+    private final CategoryPopularityRanking categoryPopularityRanking;
+
+    @Value("${application.interaction.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${application.interaction.batch-size:500}")
+    private int batchSize;
+
+    @Value("${application.interaction.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${application.interaction.enqueue-timeout-ms:50}")
+    private long enqueueTimeoutMs;
+
+    private BlockingQueue<InteractionEvent> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    // Metrics
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong droppedViewCount = new AtomicLong();
+    private final AtomicLong droppedOtherCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = Thread.ofPlatform().daemon().name("interaction-writer").start(this::writeLoop);
+    }
+
+    /**
+     * Flush nốt các event còn trong queue trước khi tắt ứng dụng.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Đưa interaction vào queue ghi, không block request chính (trừ khi queue đầy event quan trọng).
+     */
     public void log(Long userId, Long productId, String type) {
+        // Logic quy đổi điểm
+        double score = 0.0;
+        switch (type) {
+            case "VIEW" -> score = SCORE_VIEW;
+            case "CART" -> score = SCORE_ADD_TO_CART;
+            case "PURCHASE" -> score = SCORE_PURCHASE;
+        }
+
+        InteractionEvent event = new InteractionEvent(userId, productId, type, score, LocalDateTime.now());
+        if (queue.offer(event)) {
+            acceptedCount.incrementAndGet();
+            return;
+        }
+
+        // Queue đầy: bỏ VIEW mới, còn CART/PURCHASE thì thay thế VIEW cũ nhất đang chờ
+        if (event.isView()) {
+            droppedViewCount.incrementAndGet();
+            return;
+        }
+        if (evictOldestView() && queue.offer(event)) {
+            acceptedCount.incrementAndGet();
+            return;
+        }
         try {
-            // Logic quy đổi điểm
-            double score = 0.0;
-            switch (type) {
-                case "VIEW" -> score = SCORE_VIEW;
-                case "CART" -> score = SCORE_ADD_TO_CART;
-                case "PURCHASE" -> score = SCORE_PURCHASE;
+            // Không còn VIEW để bỏ -> chờ writer một chút (backpressure) rồi mới bỏ
+            if (queue.offer(event, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                acceptedCount.incrementAndGet();
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        droppedOtherCount.incrementAndGet();
+        log.warn("Interaction queue full, dropped {} of user {} on product {}", type, userId, productId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("accepted", acceptedCount.get());
+        stats.put("written", writtenCount.get());
+        stats.put("failed", failedCount.get());
+        stats.put("droppedViews", droppedViewCount.get());
+        stats.put("droppedOthers", droppedOtherCount.get());
+        stats.put("flushes", flushCount.get());
+        stats.put("queued", queue.size());
+        stats.put("queueCapacity", queueCapacity);
+        return stats;
+    }
+
+    private boolean evictOldestView() {
+        Iterator<InteractionEvent> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isView()) {
+                iterator.remove();
+                droppedViewCount.incrementAndGet();
+                return true;
             }
+        }
+        return false;
+    }
+
+    private void writeLoop() {
+        List<InteractionEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                InteractionEvent first = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Gom thêm tới khi đủ batch hoặc hết flush interval kể từ event đầu tiên
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize && running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    InteractionEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+            } catch (InterruptedException e) {
+                // stop() gọi interrupt -> flush phần đang gom rồi drain nốt queue ở vòng sau
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<InteractionEvent> batch) {
+        List<Long> ids;
+        try {
+            // reWriteBatchedInserts=true trên JDBC URL -> driver gộp thành INSERT ... VALUES (...), (...), ...
+            // Lấy lại ID sinh ra để CategoryPopularityRanking biết dòng nào đã nằm trong snapshot rebuild
+            GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.batchUpdate(con -> con.prepareStatement(INSERT_SQL, new String[]{"id"}),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            InteractionEvent event = batch.get(i);
+                            ps.setObject(1, event.userId());
+                            ps.setObject(2, event.productId());
+                            ps.setString(3, event.type());
+                            ps.setDouble(4, event.score());
+                            ps.setTimestamp(5, Timestamp.valueOf(event.timestamp()));
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return batch.size();
+                        }
+                    }, keyHolder);
+            ids = generatedIds(keyHolder, batch.size());
+            writtenCount.addAndGet(batch.size());
+            flushCount.incrementAndGet();
+        } catch (Exception e) {
+            // Log lỗi nhẹ nhàng, không throw exception làm dừng writer thread
+            failedCount.addAndGet(batch.size());
+            log.error("Failed to write {} interactions: {}", batch.size(), e.getMessage());
+            return;
+        }
+
+        // Cập nhật ring buffer sau khi INSERT thành công (event lỗi không lọt vào), 1 query category cho cả batch
+        applySafely(() -> recentInteractionStore.recordAll(
+                batch.stream().map(InteractionEvent::userId).toList(),
+                batch.stream().map(InteractionEvent::productId).toList(),
+                batch.stream().map(InteractionEvent::timestamp).toList()));
 
-            UserInteraction interaction = UserInteraction.builder()
-                    .userId(userId)
-                    .productId(productId)
-                    .interactionType(type)
-                    .ratingValue(score)
-                    .timestamp(LocalDateTime.now())
-                    .build();
+        // Cập nhật ma trận co-occurrence (item-to-item) và bảng xếp hạng phổ biến in-memory
+        for (int i = 0; i < batch.size(); i++) {
+            InteractionEvent event = batch.get(i);
+            Long id = ids.get(i);
+            applySafely(() -> itemCooccurrenceIndex.record(event.userId(), event.productId(), event.score()));
+            applySafely(() -> categoryPopularityRanking.record(id, event.productId(), event.score()));
+        }
+    }
 
-            repository.save(interaction);
+    // ID sinh ra theo đúng thứ tự batch; driver không trả đủ key -> null (ranking coi như chưa có trong DB snapshot)
+    private static List<Long> generatedIds(GeneratedKeyHolder keyHolder, int size) {
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        List<Long> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Object id = i < keys.size() && keys.size() == size ? keys.get(i).get("id") : null;
+            ids.add(id instanceof Number number ? number.longValue() : null);
+        }
+        return ids;
+    }
 
-            // System.out.println("Logged interaction: " + type + " for user " + userId);
+    private void applySafely(Runnable update) {
+        try {
+            update.run();
         } catch (Exception e) {
-            // Log lỗi nhẹ nhàng, không throw exception làm crash luồng chính
-            System.err.println("Error saving interaction: " + e.getMessage());
+            log.warn("Failed to update in-memory interaction index: {}", e.getMessage());
+        }
+    }
+
+    private record InteractionEvent(Long userId, Long productId, String type, double score, LocalDateTime timestamp) {
+
+        boolean isView() {
+            return "VIEW".equals(type);
         }
     }
-}
\ No newline at end of file
+}
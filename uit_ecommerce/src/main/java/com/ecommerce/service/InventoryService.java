@@ -0,0 +1,88 @@
+package com.ecommerce.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Trừ/hoàn tồn kho bằng UPDATE có điều kiện thay cho đọc - kiểm tra - ghi qua entity:
+ * DB tự kiểm tra và trừ trong cùng 1 câu lệnh nên không mất update, không bán vượt tồn kho.
+ * Các dòng được cập nhật theo thứ tự variantId tăng dần (1 JDBC batch) -> 2 đơn chung SKU luôn khóa
+ * các dòng theo cùng thứ tự, không deadlock.
+ * Lưu ý: không đi qua Hibernate -> entity ProductVariant đã load trong session không thấy số mới,
+ * và cache "product" phải được evict riêng.
+ */
+@Service
+@RequiredArgsConstructor
+public class InventoryService {
+
+    private static final String DECREMENT_SQL =
+            "UPDATE product_variants SET stock_quantity = stock_quantity - ? WHERE id = ? AND stock_quantity >= ?";
+    private static final String INCREMENT_SQL =
+            "UPDATE product_variants SET stock_quantity = stock_quantity + ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Trừ kho cho cả đơn. Thiếu hàng ở bất kỳ variant nào -> OutOfStockException, transaction của
+     * người gọi rollback và các dòng đã trừ trong batch được hoàn lại.
+     *
+     * @param quantities variantId -> số lượng
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void decrement(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, Integer>> lines = sorted(quantities);
+        int[] updated = jdbcTemplate.batchUpdate(DECREMENT_SQL, lines, lines.size(), (ps, line) -> {
+            ps.setInt(1, line.getValue());
+            ps.setLong(2, line.getKey());
+            ps.setInt(3, line.getValue());
+        })[0];
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                throw new OutOfStockException(lines.get(i).getKey());
+            }
+        }
+    }
+
+    /**
+     * Hoàn kho (hủy đơn).
+     *
+     * @param quantities variantId -> số lượng
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void increment(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, Integer>> lines = sorted(quantities);
+        jdbcTemplate.batchUpdate(INCREMENT_SQL, lines, lines.size(), (ps, line) -> {
+            ps.setInt(1, line.getValue());
+            ps.setLong(2, line.getKey());
+        });
+    }
+
+    private static List<Map.Entry<Long, Integer>> sorted(Map<Long, Integer> quantities) {
+        return new ArrayList<>(new TreeMap<>(quantities).entrySet());
+    }
+
+    @Getter
+    public static class OutOfStockException extends RuntimeException {
+        private final Long variantId;
+
+        public OutOfStockException(Long variantId) {
+            super("Out of stock: variant " + variantId);
+            this.variantId = variantId;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.ecommerce.service;
 
+import com.ecommerce.cache.ProductCacheInvalidator;
 import com.ecommerce.dto.request.PlaceOrderRequest;
 import com.ecommerce.dto.response.OrderItemResponse;
 import com.ecommerce.dto.response.OrderResponse;
@@ -18,7 +19,9 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -29,6 +32,10 @@ public class OrderService {
     private final CartItemRepository cartItemRepository;
     private final UserRepository userRepository;
     private final InteractionService interactionService;
+    private final SearchOutboxService searchOutboxService;
+    private final InventoryService inventoryService;
+    private final FlashSaleInventoryService flashSaleInventoryService;
+    private final ProductCacheInvalidator productCacheInvalidator;
 
     private User getCurrentUser() {
         String email = SecurityContextHolder.getContext().getAuthentication().getName();
@@ -64,15 +71,6 @@ public class OrderService {
         for (CartItem cartItem : cart.getItems()) {
             ProductVariant variant = cartItem.getProductVariant();
 
-            // Check tồn kho lần cuối (Critical Check)
-            if (variant.getStockQuantity() < cartItem.getQuantity()) {
-                throw new RuntimeException("Out of stock: " + variant.getProduct().getName());
-            }
-
-            // Trừ kho
-            variant.setStockQuantity(variant.getStockQuantity() - cartItem.getQuantity());
-            // (JPA sẽ tự động update variant xuống DB khi transaction kết thúc)
-
             // Tạo OrderItem
             OrderItem orderItem = OrderItem.builder()
                     .order(order)
@@ -94,6 +92,26 @@ public class OrderService {
         // 3. Lưu đơn hàng
         Order savedOrder = orderRepository.save(order);
 
+        // 4. Xóa sạch giỏ hàng
+        cartItemRepository.deleteAll(cart.getItems());
+        cart.getItems().clear();
+        cartRepository.save(cart);
+
+        // 5. Trừ kho (UPDATE có điều kiện, check + trừ nguyên tử trong DB).
+        // Làm sau cùng để row lock trên variant nóng được giữ ngắn nhất có thể trước commit
+        // Variant flash sale: giữ chỗ trên Redis (không khóa dòng DB), số đã bán được ghi về DB bất đồng bộ
+        try {
+            flashSaleInventoryService.reserve(quantitiesOf(savedOrder, true));
+            inventoryService.decrement(quantitiesOf(savedOrder, false));
+        } catch (InventoryService.OutOfStockException e) {
+            throw new RuntimeException("Out of stock: " + variantName(savedOrder, e.getVariantId()));
+        }
+
+        // Tồn kho thay đổi -> đồng bộ lại search index + cache chi tiết sản phẩm
+        List<Long> productIds = productIdsOf(savedOrder);
+        searchOutboxService.productsChanged(productIds);
+        productCacheInvalidator.evictProductsAfterCommit(productIds);
+
         // --- TRACKING CODE ---
         // Loop qua các item đã mua để log
         for (OrderItem item : savedOrder.getItems()) {
@@ -102,11 +120,6 @@ public class OrderService {
         }
         // ---------------------
 
-        // 4. Xóa sạch giỏ hàng
-        cartItemRepository.deleteAll(cart.getItems());
-        cart.getItems().clear();
-        cartRepository.save(cart);
-
         return mapToOrderResponse(savedOrder);
     }
 
@@ -186,17 +199,45 @@ public class OrderService {
 
     private void performCancel(Order order, String reason) {
         // 1. Hoàn lại tồn kho cho từng sản phẩm
-        for (OrderItem item : order.getItems()) {
-            ProductVariant variant = item.getProductVariant();
-            variant.setStockQuantity(variant.getStockQuantity() + item.getQuantity());
-            // JPA sẽ tự update xuống DB khi kết thúc Transaction
-        }
+        inventoryService.increment(quantitiesOf(order, false));
+        flashSaleInventoryService.release(quantitiesOf(order, true));
+
+        List<Long> productIds = productIdsOf(order);
+        searchOutboxService.productsChanged(productIds);
+        productCacheInvalidator.evictProductsAfterCommit(productIds);
 
         // 2. Cập nhật thông tin hủy
         order.setStatus(OrderStatus.CANCELLED);
         order.setCancelReason(reason);
     }
 
+    // variantId -> tổng số lượng (1 đơn có thể có nhiều dòng cùng variant), tách theo kho Redis (flash sale) / DB
+    private Map<Long, Integer> quantitiesOf(Order order, boolean flashSale) {
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (OrderItem item : order.getItems()) {
+            ProductVariant variant = item.getProductVariant();
+            if (flashSaleInventoryService.handles(variant) == flashSale) {
+                quantities.merge(variant.getId(), item.getQuantity(), Integer::sum);
+            }
+        }
+        return quantities;
+    }
+
+    private static String variantName(Order order, Long variantId) {
+        return order.getItems().stream()
+                .map(OrderItem::getProductVariant)
+                .filter(variant -> variant.getId().equals(variantId))
+                .map(variant -> variant.getProduct().getName())
+                .findFirst()
+                .orElse("variant " + variantId);
+    }
+
+    private static List<Long> productIdsOf(Order order) {
+        return order.getItems().stream()
+                .map(item -> item.getProductVariant().getProduct().getId())
+                .toList();
+    }
+
     // Helper mapping
     private OrderResponse mapToOrderResponse(Order order) {
         List<OrderItemResponse> itemResponses = order.getItems().stream()
@@ -0,0 +1,258 @@
+package com.ecommerce.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import com.ecommerce.elasticsearch.document.ProductDocument;
+import com.ecommerce.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.MultiGetItem;
+import org.springframework.data.elasticsearch.core.RefreshPolicy;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.DeleteQuery;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.data.elasticsearch.core.suggest.Completion;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Đồng bộ toàn bộ catalog vào Elasticsearch bằng Bulk API.
+ * Đọc DB theo keyset (id > lastId) từng trang chỉ gồm các cột cần thiết, mỗi trang được map + gửi bulk
+ * trên 1 virtual thread; Semaphore giới hạn số bulk request đồng thời để không làm quá tải cluster.
+ * Trong lúc nạp, refresh_interval của index được tắt (-1) và khôi phục khi xong.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProductBulkIndexer {
+
+    private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+
+    private final ProductRepository productRepository;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final ElasticsearchClient elasticsearchClient;
+
+    @Value("${application.search.reindex.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${application.search.reindex.concurrency:4}")
+    private int concurrency;
+
+    /**
+     * Index tất cả sản phẩm vào index chỉ định. Trả về số document đã index.
+     */
+    public long indexAll(IndexCoordinates index) {
+        long start = System.currentTimeMillis();
+        String indexName = index.getIndexName();
+        String previousRefreshInterval = getRefreshInterval(indexName);
+        setRefreshInterval(indexName, "-1");
+
+        AtomicLong indexed = new AtomicLong();
+        Semaphore inFlight = new Semaphore(concurrency);
+        List<Future<?>> batches = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long lastId = 0L;
+            while (true) {
+                List<Object[]> rows = productRepository.findSearchRowsAfter(lastId, PageRequest.of(0, batchSize));
+                if (rows.isEmpty()) {
+                    break;
+                }
+                lastId = (Long) rows.get(rows.size() - 1)[0];
+
+                // Chờ có slot trống -> DB không đọc trước quá xa so với tốc độ bulk
+                inFlight.acquire();
+                batches.add(executor.submit(() -> {
+                    try {
+                        List<IndexQuery> queries = toIndexQueries(rows);
+                        elasticsearchOperations.bulkIndex(queries, index);
+                        indexed.addAndGet(queries.size());
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+
+                if (rows.size() < batchSize) {
+                    break;
+                }
+            }
+
+            for (Future<?> batch : batches) {
+                batch.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Reindex interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Bulk indexing failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            setRefreshInterval(indexName, previousRefreshInterval);
+        }
+
+        elasticsearchOperations.indexOps(index).refresh();
+        log.info("Bulk indexed {} products into {} in {} ms ({} batches)",
+                indexed.get(), indexName, System.currentTimeMillis() - start, batches.size());
+        return indexed.get();
+    }
+
+    /**
+     * Index lại 1 nhóm sản phẩm theo ID (qua alias) trong 1 bulk request.
+     * Sản phẩm không còn trong DB được xóa khỏi index. Trả về các document đã index.
+     * Dùng refresh=wait_for: khi trả về, thay đổi đã search được -> người gọi evict cache listing ngay
+     * mà không bị request chen vào cache lại kết quả cũ từ segment chưa refresh.
+     */
+    public List<ProductDocument> indexProducts(Collection<Long> productIds) {
+        return indexProducts(productIds, elasticsearchOperations.getIndexCoordinatesFor(ProductDocument.class));
+    }
+
+    /**
+     * Như indexProducts(ids) nhưng ghi vào index chỉ định (vd. index đang được rebuild, chưa có alias).
+     */
+    public List<ProductDocument> indexProducts(Collection<Long> productIds, IndexCoordinates index) {
+        if (productIds.isEmpty()) {
+            return List.of();
+        }
+        List<IndexQuery> queries = toIndexQueries(productRepository.findSearchRowsByIdIn(productIds));
+        if (!queries.isEmpty()) {
+            waitUntilRefreshed().bulkIndex(queries, index);
+        }
+        if (queries.size() < productIds.size()) {
+            Set<String> indexedIds = queries.stream().map(IndexQuery::getId).collect(Collectors.toSet());
+            deleteProducts(productIds.stream().filter(id -> !indexedIds.contains(String.valueOf(id))).toList(), index);
+        }
+        return queries.stream().map(query -> (ProductDocument) query.getObject()).toList();
+    }
+
+    /**
+     * Trạng thái hiện tại trong index (chỉ name, categoryId, basePrice) của các sản phẩm, bỏ qua ID chưa được index.
+     */
+    public List<ProductDocument> findIndexed(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return List.of();
+        }
+        var query = new NativeQueryBuilder()
+                .withIds(productIds.stream().map(String::valueOf).toList())
+                .withSourceFilter(new FetchSourceFilter(true, new String[]{"name", "categoryId", "basePrice"}, null))
+                .build();
+        return elasticsearchOperations.multiGet(query, ProductDocument.class).stream()
+                .filter(MultiGetItem::hasItem)
+                .map(MultiGetItem::getItem)
+                .toList();
+    }
+
+    public void deleteProducts(Collection<Long> productIds, IndexCoordinates index) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        var query = new NativeQueryBuilder()
+                .withIds(productIds.stream().map(String::valueOf).toList())
+                .build();
+        waitUntilRefreshed().delete(DeleteQuery.builder(query).build(), ProductDocument.class, index);
+    }
+
+    private ElasticsearchOperations waitUntilRefreshed() {
+        return elasticsearchOperations.withRefreshPolicy(RefreshPolicy.WAIT_UNTIL);
+    }
+
+    // Thêm dữ liệu listing card (khoảng giá, tồn kho, thumbnail) bằng 2 query gộp cho cả batch
+    private List<IndexQuery> toIndexQueries(List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        List<Long> productIds = rows.stream().map(row -> (Long) row[0]).toList();
+
+        Map<Long, Object[]> variantStats = new HashMap<>();
+        for (Object[] stats : productRepository.findVariantStatsByProductIdIn(productIds)) {
+            variantStats.put((Long) stats[0], stats);
+        }
+        Map<Long, String> thumbnails = new HashMap<>();
+        for (Object[] thumbnail : productRepository.findThumbnailsByProductIdIn(productIds)) {
+            thumbnails.put((Long) thumbnail[0], (String) thumbnail[1]);
+        }
+
+        List<IndexQuery> queries = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Long productId = (Long) row[0];
+            Object[] stats = variantStats.get(productId);
+            ProductDocument document = ProductDocument.builder()
+                    .id(productId)
+                    .name((String) row[1])
+                    .description((String) row[2])
+                    .basePrice((BigDecimal) row[3])
+                    .categoryId((Long) row[4])
+                    .categoryName((String) row[5])
+                    .averageRating((Double) row[6])
+                    .reviewCount((Integer) row[7])
+                    .thumbnailUrl(thumbnails.get(productId))
+                    .minPrice(stats != null ? (BigDecimal) stats[1] : null)
+                    .maxPrice(stats != null ? (BigDecimal) stats[2] : null)
+                    .inStock(stats != null && stats[3] != null && ((Number) stats[3]).longValue() > 0)
+                    .suggest(toCompletion((String) row[1], (Integer) row[7]))
+                    .build();
+            queries.add(new IndexQueryBuilder()
+                    .withId(String.valueOf(productId))
+                    .withObject(document)
+                    .build());
+        }
+        return queries;
+    }
+
+    // Input gồm tên đầy đủ và các hậu tố bắt đầu từ mỗi từ -> gõ "iphone" vẫn khớp "Apple iPhone 15"
+    private static Completion toCompletion(String name, Integer reviewCount) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        String[] words = name.trim().split("\\s+");
+        List<String> inputs = new ArrayList<>(words.length);
+        for (int i = 0; i < words.length; i++) {
+            inputs.add(String.join(" ", Arrays.asList(words).subList(i, words.length)));
+        }
+        Completion completion = new Completion(inputs);
+        completion.setWeight(reviewCount != null ? reviewCount : 0);
+        return completion;
+    }
+
+    private String getRefreshInterval(String indexName) {
+        try {
+            var response = elasticsearchClient.indices().getSettings(s -> s.index(indexName));
+            var settings = response.get(indexName);
+            if (settings != null && settings.settings() != null && settings.settings().index() != null
+                    && settings.settings().index().refreshInterval() != null) {
+                return settings.settings().index().refreshInterval().time();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read refresh_interval of {}: {}", indexName, e.getMessage());
+        }
+        return DEFAULT_REFRESH_INTERVAL;
+    }
+
+    private void setRefreshInterval(String indexName, String refreshInterval) {
+        try {
+            elasticsearchClient.indices().putSettings(s -> s
+                    .index(indexName)
+                    .settings(is -> is.refreshInterval(t -> t.time(refreshInterval))));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to set refresh_interval={} on {}: {}", refreshInterval, indexName, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.ecommerce.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import com.ecommerce.elasticsearch.document.ProductDocument;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Quản lý index sản phẩm theo version: dữ liệu nằm ở products_v{n}, search/ghi đi qua alias "products".
+ * Reindex build index mới song song với index đang phục vụ, kiểm tra số document rồi chuyển alias
+ * trong 1 request updateAliases (atomic) -> search luôn thấy 1 index đầy đủ.
+ * Lỗi ở bất kỳ bước nào trước khi chuyển alias: xóa index mới, alias giữ nguyên.
+ * Trong lúc rebuild, outbox vẫn ghi qua alias (index cũ): key Redis REBUILD_TARGET_KEY báo cho mọi node biết
+ * đang rebuild, các node ghi lại productId đã đồng bộ vào REBUILD_CHANGED_KEY và rebuild index lại các sản phẩm này
+ * (đọc DB mới nhất) vào index mới trước và sau khi chuyển alias -> thay đổi trong lúc rebuild không bị mất.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProductIndexManager {
+
+    private static final String REBUILD_TARGET_KEY = "search:rebuild:target";
+    private static final String REBUILD_CHANGED_KEY = "search:rebuild:changed";
+    // Chặn trên thời gian 1 lần rebuild: node rebuild chết giữa chừng thì các node khác thôi ghi nhận sau TTL này
+    private static final Duration REBUILD_MARKER_TTL = Duration.ofHours(2);
+    private static final int REPLAY_BATCH_SIZE = 1000;
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final ElasticsearchClient elasticsearchClient;
+    private final ProductBulkIndexer productBulkIndexer;
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * Gọi sau khi outbox đã index các sản phẩm qua alias: nếu đang rebuild thì ghi nhận để replay vào index mới.
+     */
+    public void recordChanged(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        try {
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(REBUILD_TARGET_KEY))) {
+                redisTemplate.opsForSet().add(REBUILD_CHANGED_KEY,
+                        productIds.stream().map(String::valueOf).toArray(String[]::new));
+                redisTemplate.expire(REBUILD_CHANGED_KEY, REBUILD_MARKER_TTL);
+            }
+        } catch (RuntimeException e) {
+            // Không chặn outbox vì Redis; sản phẩm này có thể lệch trên index mới tới lần thay đổi sau
+            log.warn("Failed to record products changed during rebuild: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Build products_v{n+1}, chuyển alias sang và xóa các version cũ. Trả về số document đã index.
+     */
+    public long rebuild(long expectedMinimumCount) {
+        String alias = aliasName();
+        Map<String, IndexState> existing = listIndices(alias);
+        String newIndex = alias + "_v" + (latestVersion(alias, existing) + 1);
+
+        IndexOperations indexOps = elasticsearchOperations.indexOps(IndexCoordinates.of(newIndex));
+        long indexed;
+        try {
+            IndexOperations templateOps = elasticsearchOperations.indexOps(ProductDocument.class);
+            indexOps.create(templateOps.createSettings(), templateOps.createMapping());
+            log.info("Created Elasticsearch index: {}", newIndex);
+
+            // Bật ghi nhận thay đổi TRƯỚC khi đọc DB -> thay đổi nào lọt khỏi indexAll cũng nằm trong tập replay
+            redisTemplate.delete(REBUILD_CHANGED_KEY);
+            redisTemplate.opsForValue().set(REBUILD_TARGET_KEY, newIndex, REBUILD_MARKER_TTL);
+
+            indexed = productBulkIndexer.indexAll(indexOps.getIndexCoordinates());
+
+            // Kiểm tra trước khi đưa vào phục vụ: ES thấy đủ số document đã gửi và không ít hơn số sản phẩm lúc bắt đầu
+            long count = elasticsearchOperations.count(Query.findAll(), indexOps.getIndexCoordinates());
+            if (count != indexed || count < expectedMinimumCount) {
+                throw new IllegalStateException("Document count check failed for " + newIndex + ": indexed="
+                        + indexed + ", counted=" + count + ", expected>=" + expectedMinimumCount);
+            }
+
+            long replayed = replayChanged(indexOps.getIndexCoordinates());
+            log.info("Replayed {} products changed during rebuild into {}", replayed, newIndex);
+            swapAlias(alias, newIndex, existing);
+        } catch (RuntimeException e) {
+            log.error("Reindex into {} failed, rolling back: {}", newIndex, e.getMessage());
+            redisTemplate.delete(List.of(REBUILD_TARGET_KEY, REBUILD_CHANGED_KEY));
+            deleteQuietly(newIndex);
+            throw e;
+        }
+
+        // Thay đổi được drain vào index cũ giữa lần replay trên và lúc chuyển alias (index mới đã phục vụ -> không rollback)
+        try {
+            replayChanged(indexOps.getIndexCoordinates());
+        } catch (RuntimeException e) {
+            log.warn("Replay after alias swap to {} failed: {}", newIndex, e.getMessage());
+        } finally {
+            redisTemplate.delete(List.of(REBUILD_TARGET_KEY, REBUILD_CHANGED_KEY));
+        }
+
+        // Alias đã trỏ sang index mới -> dọn các version cũ
+        existing.keySet().stream()
+                .filter(index -> !index.equals(alias))
+                .forEach(this::deleteQuietly);
+        log.info("Alias {} now points to {} ({} documents)", alias, newIndex, indexed);
+        return indexed;
+    }
+
+    // Lấy dần (SPOP) các productId đã ghi nhận và index lại từ DB vào index mới
+    private long replayChanged(IndexCoordinates index) {
+        long replayed = 0;
+        List<String> batch;
+        while ((batch = redisTemplate.opsForSet().pop(REBUILD_CHANGED_KEY, REPLAY_BATCH_SIZE)) != null && !batch.isEmpty()) {
+            productBulkIndexer.indexProducts(batch.stream().map(Long::valueOf).toList(), index);
+            replayed += batch.size();
+        }
+        return replayed;
+    }
+
+    private void swapAlias(String alias, String newIndex, Map<String, IndexState> existing) {
+        List<Action> actions = new ArrayList<>();
+        actions.add(Action.of(a -> a.add(add -> add.index(newIndex).alias(alias))));
+        existing.forEach((index, state) -> {
+            if (index.equals(alias)) {
+                // Index cũ tên "products" (trước khi dùng alias) -> xóa trong cùng request để alias lấy được tên này
+                actions.add(Action.of(a -> a.removeIndex(r -> r.index(index))));
+            } else if (state.aliases().containsKey(alias)) {
+                actions.add(Action.of(a -> a.remove(r -> r.index(index).alias(alias))));
+            }
+        });
+
+        try {
+            elasticsearchClient.indices().updateAliases(u -> u.actions(actions));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to move alias " + alias + " to " + newIndex, e);
+        }
+    }
+
+    private Map<String, IndexState> listIndices(String alias) {
+        try {
+            return elasticsearchClient.indices()
+                    .get(g -> g.index(alias, alias + "_v*").ignoreUnavailable(true).allowNoIndices(true))
+                    .indices();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list indices of " + alias, e);
+        }
+    }
+
+    private static long latestVersion(String alias, Map<String, IndexState> indices) {
+        String prefix = alias + "_v";
+        return indices.keySet().stream()
+                .filter(index -> index.startsWith(prefix))
+                .map(index -> index.substring(prefix.length()))
+                .filter(version -> !version.isEmpty() && version.chars().allMatch(Character::isDigit))
+                .mapToLong(Long::parseLong)
+                .max()
+                .orElse(0L);
+    }
+
+    private String aliasName() {
+        return elasticsearchOperations.getIndexCoordinatesFor(ProductDocument.class).getIndexName();
+    }
+
+    private void deleteQuietly(String index) {
+        try {
+            elasticsearchOperations.indexOps(IndexCoordinates.of(index)).delete();
+        } catch (Exception e) {
+            log.warn("Failed to delete index {}: {}", index, e.getMessage());
+        }
+    }
+}
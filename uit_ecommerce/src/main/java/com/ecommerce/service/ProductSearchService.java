@@ -1,29 +1,38 @@
 package com.ecommerce.service;
 
 import com.ecommerce.dto.request.ProductSearchCriteria;
+import com.ecommerce.dto.response.CursorPage;
+import com.ecommerce.dto.response.FacetBucket;
+import com.ecommerce.dto.response.FacetedPage;
 import com.ecommerce.dto.response.ProductResponse;
+import com.ecommerce.dto.response.SearchFacets;
 import com.ecommerce.elasticsearch.document.ProductDocument;
-import com.ecommerce.elasticsearch.repository.ProductElasticsearchRepository;
-import com.ecommerce.entity.Product;
 import com.ecommerce.mapper.ProductMapper;
 import com.ecommerce.repository.ProductRepository;
 
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.AggregationRange;
 import co.elastic.clients.elasticsearch._types.query_dsl.Query;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregations;
 import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
 
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -32,23 +41,93 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ProductSearchService {
 
-    private final ProductElasticsearchRepository elasticsearchRepository;
+    private static final String CATEGORY_FACET = "categories";
+    private static final String PRICE_FACET = "price_ranges";
+    private static final String RATING_FACET = "ratings";
+    private static final List<Double> RATING_BOUNDARIES = List.of(1.0, 2.0, 3.0, 4.0);
+
     private final ProductRepository productRepository;
     private final ElasticsearchOperations elasticsearchOperations;
+    private final ProductIndexManager productIndexManager;
+    private final ProductSuggestService productSuggestService;
+
+    @Value("${application.search.facets.price-ranges:1000000,5000000,10000000,20000000}")
+    private List<Double> priceRangeBoundaries;
+
+    @Value("${application.search.facets.max-categories:20}")
+    private int maxCategoryFacets;
 
     /**
      * Tìm kiếm sản phẩm với Elasticsearch + Redis cache
      * Flow: Redis cache check -> Elasticsearch query (nếu cache miss) -> Cache
      * result
      */
-    @Cacheable(value = "products_search", key = "#criteria.toString() + '_' + #pageable.toString()")
-    @Transactional(readOnly = true)
+    @Cacheable(value = "products_search", keyGenerator = "productListingKeyGenerator", sync = true)
     public Page<ProductResponse> search(ProductSearchCriteria criteria, Pageable pageable) {
         log.info("Searching products with Elasticsearch: {}", criteria);
 
         // 1. Build Bool Query for filtering and matching
+        Query boolQuery = buildQuery(criteria);
+
+        // 2. Execute Query (kèm aggregation cho facets nếu được yêu cầu -> cùng 1 round-trip)
+        var queryBuilder = new NativeQueryBuilder()
+                .withQuery(boolQuery)
+                .withPageable(pageable);
+        if (criteria.includeFacets()) {
+            addFacetAggregations(queryBuilder);
+        }
+
+        SearchHits<ProductDocument> searchHits = elasticsearchOperations.search(queryBuilder.build(), ProductDocument.class);
+
+        log.info("Elasticsearch returned {} hits", searchHits.getTotalHits());
+
+        // Dựng response trực tiếp từ _source (document đã chứa đủ dữ liệu listing card), không query DB
+        List<ProductResponse> responses = searchHits.getSearchHits().stream()
+                .map(hit -> ProductMapper.toProductResponse(hit.getContent()))
+                .collect(Collectors.toList());
+
+        SearchFacets facets = criteria.includeFacets() ? toFacets(searchHits) : null;
+        return new FacetedPage<>(responses, pageable, searchHits.getTotalHits(), facets);
+    }
+
+    /**
+     * Phân trang theo cursor (search_after) cho infinite scroll / crawler đi sâu: không dùng from/size nên
+     * chi phí mỗi trang không tăng theo độ sâu và không bị giới hạn bởi max_result_window.
+     * Sort luôn kèm tiebreaker "id" để thứ tự là toàn phần -> không trùng/sót document giữa các trang.
+     * cursor = null: trang đầu tiên. Không cache (mỗi cursor gần như chỉ được đọc 1 lần).
+     */
+    public CursorPage<ProductResponse> searchAfter(ProductSearchCriteria criteria, Sort sort, int size, String cursor) {
+        Sort stableSort = sort.getOrderFor("id") != null ? sort : sort.and(Sort.by("id").ascending());
+        String sortSpec = stableSort.toString();
+
+        // Lấy dư 1 document để biết còn trang sau hay không mà không cần đếm total hits
+        var queryBuilder = new NativeQueryBuilder()
+                .withQuery(buildQuery(criteria))
+                .withSort(stableSort)
+                .withPageable(PageRequest.of(0, size + 1))
+                .withTrackTotalHits(false);
+        if (cursor != null && !cursor.isEmpty()) {
+            queryBuilder.withSearchAfter(SearchCursorCodec.decode(sortSpec, cursor));
+        }
+
+        List<SearchHit<ProductDocument>> hits = elasticsearchOperations
+                .search(queryBuilder.build(), ProductDocument.class)
+                .getSearchHits();
+
+        boolean hasNext = hits.size() > size;
+        List<SearchHit<ProductDocument>> page = hasNext ? hits.subList(0, size) : hits;
+        String nextCursor = hasNext
+                ? SearchCursorCodec.encode(sortSpec, page.get(page.size() - 1).getSortValues())
+                : null;
+
+        List<ProductResponse> responses = page.stream()
+                .map(hit -> ProductMapper.toProductResponse(hit.getContent()))
+                .collect(Collectors.toList());
+        return new CursorPage<>(responses, responses.size(), nextCursor);
+    }
 
-        Query boolQuery = Query.of(q -> q.bool(b -> {
+    private static Query buildQuery(ProductSearchCriteria criteria) {
+        return Query.of(q -> q.bool(b -> {
 
             // A. Keyword Search with Boosting (Name^3, Description^1)
             if (criteria.keyword() != null && !criteria.keyword().isEmpty()) {
@@ -75,97 +154,65 @@ public class ProductSearchService {
             }
             return b;
         }));
+    }
 
-        // 2. Execute Query
-        var query = new NativeQueryBuilder()
-                .withQuery(boolQuery)
-                .withPageable(pageable)
-                .build();
-
-        SearchHits<ProductDocument> searchHits = elasticsearchOperations.search(query, ProductDocument.class);
-
-        log.info("Elasticsearch returned {} hits", searchHits.getTotalHits());
-
-        List<Long> productIds = searchHits.getSearchHits().stream()
-                .map(hit -> hit.getContent().getId())
-                .collect(Collectors.toList());
+    private void addFacetAggregations(NativeQueryBuilder queryBuilder) {
+        queryBuilder.withAggregation(CATEGORY_FACET, Aggregation.of(a -> a
+                .terms(t -> t.field("categoryId").size(maxCategoryFacets))));
+        queryBuilder.withAggregation(PRICE_FACET, Aggregation.of(a -> a
+                .range(r -> r.field("basePrice").ranges(toRanges(priceRangeBoundaries)))));
+        queryBuilder.withAggregation(RATING_FACET, Aggregation.of(a -> a
+                .range(r -> r.field("averageRating").ranges(toRanges(RATING_BOUNDARIES)))));
+    }
 
-        if (productIds.isEmpty()) {
-            return new PageImpl<>(List.of(), pageable, 0);
+    // [b1, b2, ...] -> (-inf, b1), [b1, b2), ..., [bn, +inf)
+    private static List<AggregationRange> toRanges(List<Double> boundaries) {
+        List<AggregationRange> ranges = new ArrayList<>();
+        Double previous = null;
+        for (Double boundary : boundaries) {
+            Double from = previous;
+            ranges.add(AggregationRange.of(r -> r.from(from).to(boundary)));
+            previous = boundary;
         }
-
-        // Fetch full entities (preserve order from Elasticsearch hits)
-        // Note: findAllById does not guarantee order, so we might need to re-sort or
-        // map manually if strict order needed.
-        // For now, strict order preservation logic:
-        List<Product> products = productRepository.findAllById(productIds);
-
-        // Sort products list based on productIds order (relevance order)
-        java.util.Map<Long, Product> productMap = products.stream()
-                .collect(Collectors.toMap(Product::getId, p -> p));
-
-        List<ProductResponse> responses = productIds.stream()
-                .filter(productMap::containsKey)
-                .map(productMap::get)
-                .map(ProductMapper::toProductResponse)
-                .collect(Collectors.toList());
-
-        return new PageImpl<>(responses, pageable, searchHits.getTotalHits());
+        Double last = previous;
+        ranges.add(AggregationRange.of(r -> r.from(last)));
+        return ranges;
     }
 
-    /**
-     * Index một sản phẩm vào Elasticsearch
-     */
-    public void indexProduct(Product product) {
-        log.info("Indexing product to Elasticsearch: {}", product.getId());
-
-        ProductDocument document = ProductDocument.builder()
-                .id(product.getId())
-                .name(product.getName())
-                .description(product.getDescription())
-                .basePrice(product.getBasePrice())
-                .categoryId(product.getCategory() != null ? product.getCategory().getId() : null)
-                .categoryName(product.getCategory() != null ? product.getCategory().getName() : null)
-                .averageRating(product.getAverageRating())
-                .reviewCount(product.getReviewCount())
-                .build();
-
-        elasticsearchRepository.save(document);
-        log.info("Product indexed successfully: {}", product.getId());
+    private static SearchFacets toFacets(SearchHits<ProductDocument> searchHits) {
+        if (!(searchHits.getAggregations() instanceof ElasticsearchAggregations aggregations)) {
+            return new SearchFacets(List.of(), List.of(), List.of());
+        }
+        Aggregate categories = aggregations.get(CATEGORY_FACET).aggregation().getAggregate();
+        Aggregate prices = aggregations.get(PRICE_FACET).aggregation().getAggregate();
+        Aggregate ratings = aggregations.get(RATING_FACET).aggregation().getAggregate();
+
+        return new SearchFacets(
+                categories.lterms().buckets().array().stream()
+                        .map(b -> new FacetBucket(String.valueOf(b.key()), null, null, b.docCount()))
+                        .toList(),
+                toRangeBuckets(prices),
+                toRangeBuckets(ratings));
     }
 
-    /**
-     * Xóa sản phẩm khỏi Elasticsearch index
-     */
-    @CacheEvict(value = "products_search", allEntries = true)
-    public void deleteFromIndex(Long productId) {
-        log.info("Deleting product from Elasticsearch: {}", productId);
-        elasticsearchRepository.deleteById(productId);
+    private static List<FacetBucket> toRangeBuckets(Aggregate aggregate) {
+        return aggregate.range().buckets().array().stream()
+                .map(b -> new FacetBucket(b.key(), b.from(), b.to(), b.docCount()))
+                .toList();
     }
 
     /**
      * Đồng bộ tất cả sản phẩm từ database vào Elasticsearch
-     * Tự động tạo index nếu chưa tồn tại
+     * Build index version mới rồi chuyển alias "products" sang (search không bị gián đoạn trong lúc reindex)
+     * Cả index thay đổi -> vẫn xóa toàn bộ cache search
      */
     @CacheEvict(value = "products_search", allEntries = true)
     public void reindexAll() {
         log.info("Reindexing all products to Elasticsearch");
 
-        // Ensure index exists before reindexing
-        var indexOps = elasticsearchOperations.indexOps(ProductDocument.class);
-        try {
-            if (!indexOps.exists()) {
-                indexOps.create();
-                indexOps.putMapping();
-                log.info("Created Elasticsearch index: products");
-            }
-        } catch (Exception e) {
-            log.warn("Failed to check/create index, proceeding anyway: {}", e.getMessage());
-        }
-
-        List<Product> allProducts = productRepository.findAll();
-        allProducts.forEach(this::indexProduct);
+        long indexed = productIndexManager.rebuild(productRepository.count());
+        productSuggestService.markDirty();
 
-        log.info("Reindexed {} products", allProducts.size());
+        log.info("Reindexed {} products", indexed);
     }
 }
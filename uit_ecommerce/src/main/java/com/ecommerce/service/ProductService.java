@@ -11,9 +11,7 @@ import com.ecommerce.repository.UserRepository;
 import jakarta.persistence.criteria.Predicate;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
@@ -33,7 +31,7 @@ public class ProductService {
     private final CategoryRepository categoryRepository;
 
     private final UserRepository userRepository;
-    private final ProductSearchService productSearchService;
+    private final SearchOutboxService searchOutboxService;
 
     // Lấy User đang đăng nhập
     public User getCurrentUser() {
@@ -42,10 +40,7 @@ public class ProductService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
     }
 
-    @Caching(evict = {
-            @CacheEvict(value = "products_page", allEntries = true),
-            @CacheEvict(value = "products_search", allEntries = true)
-    })
+    // Cache listing/search được xóa chọn lọc (theo category + price bucket) khi outbox index sản phẩm mới
     @Transactional
     public ProductResponse createProduct(ProductRequest request) {
         Category category = categoryRepository.findById(request.categoryId())
@@ -76,6 +71,7 @@ public class ProductService {
                             .price(v.price())
                             .stockQuantity(v.stockQuantity())
                             .sku(v.sku())
+                            .flashSale(Boolean.TRUE.equals(v.flashSale()))
                             .product(product)
                             .build())
                     .toList();
@@ -84,19 +80,15 @@ public class ProductService {
 
         Product savedProduct = productRepository.save(product);
 
-        // 4. Index vào Elasticsearch
-        try {
-            productSearchService.indexProduct(savedProduct);
-        } catch (Exception e) {
-            log.warn("Failed to index product to Elasticsearch: {}", e.getMessage());
-        }
+        // 4. Đồng bộ sang Elasticsearch qua outbox (cùng transaction, index bất đồng bộ theo batch)
+        searchOutboxService.productChanged(savedProduct.getId());
 
         return ProductMapper.toProductResponse(savedProduct);
     }
 
     // Logic lọc sản phẩm (Search & Filter) - Fallback nếu Elasticsearch không khả
     // dụng
-    @Cacheable(value = "products_page", key = "#criteria.toString() + #pageable.toString()")
+    @Cacheable(value = "products_page", keyGenerator = "productListingKeyGenerator", sync = true)
     @Transactional(readOnly = true)
     public Page<ProductResponse> searchProducts(ProductSearchCriteria criteria, Pageable pageable) {
         Specification<Product> spec = (root, query, cb) -> {
@@ -121,7 +113,7 @@ public class ProductService {
         return productPage.map(ProductMapper::toProductResponse);
     }
 
-    @Cacheable(value = "product", key = "#id")
+    @Cacheable(value = "product", key = "#id", sync = true)
     @Transactional(readOnly = true)
     public ProductResponse getProductById(Long id) {
         Product product = productRepository.findById(id)
@@ -0,0 +1,303 @@
+package com.ecommerce.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.CompletionSuggestOption;
+import com.ecommerce.dto.response.ProductSuggestion;
+import com.ecommerce.elasticsearch.document.ProductDocument;
+import com.ecommerce.recommendation.CategoryPopularityRanking;
+import com.ecommerce.recommendation.LongFloatHashMap;
+import com.ecommerce.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Autocomplete tên sản phẩm (type-ahead).
+ * Nguồn chính: prefix index in-memory (mảng key đã sort + segment tree theo độ phổ biến) -> top-k mỗi prefix
+ * trong O(log n + k log n), không đi qua ES. Rebuild khi reindex, khi outbox có thay đổi và định kỳ;
+ * khi chỉ thứ hạng phổ biến thay đổi thì giữ nguyên key, chỉ tính lại trọng số (không query DB).
+ * Nguồn phụ: ES completion suggester, chỉ dùng khi index in-memory chưa build xong.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProductSuggestService {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{Alnum}]+");
+    private static final int MAX_KEY_LENGTH = 64;
+
+    private final ProductRepository productRepository;
+    private final CategoryPopularityRanking categoryPopularityRanking;
+    private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchOperations elasticsearchOperations;
+
+    private volatile PrefixIndex index;
+    private volatile boolean dirty = true;
+    // Snapshot globalOrder() đã dùng để tính trọng số; mỗi lần resort ranking trả về mảng mới
+    private long[] rankingOrder;
+
+    public List<ProductSuggestion> suggest(String query, int limit) {
+        String prefix = normalize(query);
+        if (prefix.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        PrefixIndex current = index;
+        return current != null ? current.top(prefix, limit) : suggestFromElasticsearch(query, limit);
+    }
+
+    /**
+     * Đánh dấu cần rebuild (gọi khi sản phẩm thay đổi: outbox, reindex).
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        refreshIfDirty();
+    }
+
+    @Scheduled(fixedDelayString = "${application.search.suggest.refresh-ms:30000}")
+    public synchronized void refreshIfDirty() {
+        long[] order = categoryPopularityRanking.globalOrder();
+        if (!dirty) {
+            // Ranking build xong sau warm-up hoặc vừa resort -> cập nhật trọng số cho index hiện có
+            PrefixIndex current = index;
+            if (current != null && order != rankingOrder) {
+                index = current.withWeights(popularityWeights(order));
+                rankingOrder = order;
+            }
+            return;
+        }
+        dirty = false;
+        try {
+            long start = System.currentTimeMillis();
+            index = PrefixIndex.build(productRepository.findAllNames(), popularityWeights(order));
+            rankingOrder = order;
+            log.info("Built suggest index with {} keys in {} ms", index.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            dirty = true;
+            log.error("Failed to build suggest index: {}", e.getMessage());
+        }
+    }
+
+    // Sản phẩm phổ biến hơn có trọng số cao hơn (theo thứ hạng toàn cục, không phụ thuộc thang điểm decay)
+    private static LongFloatHashMap popularityWeights(long[] order) {
+        LongFloatHashMap weights = new LongFloatHashMap(order.length);
+        for (int i = 0; i < order.length; i++) {
+            weights.addTo(order[i], order.length - i);
+        }
+        return weights;
+    }
+
+    private List<ProductSuggestion> suggestFromElasticsearch(String query, int limit) {
+        try {
+            String indexName = elasticsearchOperations.getIndexCoordinatesFor(ProductDocument.class).getIndexName();
+            SearchResponse<ProductDocument> response = elasticsearchClient.search(s -> s
+                    .index(indexName)
+                    .source(src -> src.filter(f -> f.includes("id", "name")))
+                    .suggest(sg -> sg.suggesters("name", fs -> fs
+                            .prefix(query)
+                            .completion(c -> c.field("suggest").size(limit).skipDuplicates(true)))), ProductDocument.class);
+
+            List<ProductSuggestion> suggestions = new ArrayList<>();
+            response.suggest().getOrDefault("name", List.of()).forEach(suggestion ->
+                    suggestion.completion().options().stream()
+                            .map(CompletionSuggestOption::source)
+                            .filter(document -> document != null && document.getId() != null)
+                            .forEach(document -> suggestions.add(new ProductSuggestion(document.getId(), document.getName()))));
+            return suggestions;
+        } catch (Exception e) {
+            log.warn("Completion suggester failed: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    // Lowercase, bỏ dấu tiếng Việt, gộp ký tự đặc biệt thành 1 khoảng trắng
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT).replace('đ', 'd');
+        String stripped = COMBINING_MARKS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+        return NON_ALPHANUMERIC.matcher(stripped).replaceAll(" ").trim();
+    }
+
+    /**
+     * Snapshot bất biến: mỗi tên sản phẩm sinh 1 key cho mỗi vị trí từ ("apple iphone 15", "iphone 15", "15"),
+     * các key được sort để mọi key cùng prefix nằm liền nhau. Segment tree lưu vị trí có trọng số lớn nhất
+     * của mỗi đoạn -> lấy top-k trong đoạn bằng cách tách đoạn quanh phần tử lớn nhất (priority queue).
+     */
+    static final class PrefixIndex {
+
+        private final String[] keys;
+        private final int[] productIndexes; // key -> vị trí trong productIds/names
+        private final float[] weights;
+        private final long[] productIds;
+        private final String[] names;
+        private final int[] tree; // segment tree (iterative), lưu vị trí key có weight lớn nhất
+        private final int leafOffset;
+
+        private PrefixIndex(String[] keys, int[] productIndexes, float[] weights, long[] productIds, String[] names) {
+            this.keys = keys;
+            this.productIndexes = productIndexes;
+            this.weights = weights;
+            this.productIds = productIds;
+            this.names = names;
+
+            int size = 1;
+            while (size < Math.max(1, keys.length)) {
+                size <<= 1;
+            }
+            leafOffset = size;
+            tree = new int[2 * size];
+            Arrays.fill(tree, -1);
+            for (int i = 0; i < keys.length; i++) {
+                tree[size + i] = i;
+            }
+            for (int node = size - 1; node >= 1; node--) {
+                tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+
+        static PrefixIndex build(List<Object[]> products, LongFloatHashMap popularity) {
+            long[] productIds = new long[products.size()];
+            String[] names = new String[products.size()];
+            List<String> keyList = new ArrayList<>();
+            List<Integer> owners = new ArrayList<>();
+
+            for (int p = 0; p < products.size(); p++) {
+                productIds[p] = (Long) products.get(p)[0];
+                names[p] = (String) products.get(p)[1];
+                String[] words = normalize(names[p]).split(" ");
+                for (int w = 0; w < words.length; w++) {
+                    if (words[w].isEmpty()) {
+                        continue;
+                    }
+                    String key = String.join(" ", Arrays.asList(words).subList(w, words.length));
+                    keyList.add(key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key);
+                    owners.add(p);
+                }
+            }
+
+            Integer[] order = new Integer[keyList.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> keyList.get(a).compareTo(keyList.get(b)));
+
+            String[] keys = new String[order.length];
+            int[] productIndexes = new int[order.length];
+            float[] weights = new float[order.length];
+            for (int i = 0; i < order.length; i++) {
+                keys[i] = keyList.get(order[i]);
+                productIndexes[i] = owners.get(order[i]);
+                weights[i] = popularity.get(productIds[productIndexes[i]]);
+            }
+            return new PrefixIndex(keys, productIndexes, weights, productIds, names);
+        }
+
+        // Cùng key, trọng số mới (segment tree dựng lại, không cần đọc lại tên sản phẩm)
+        PrefixIndex withWeights(LongFloatHashMap popularity) {
+            float[] reweighted = new float[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                reweighted[i] = popularity.get(productIds[productIndexes[i]]);
+            }
+            return new PrefixIndex(keys, productIndexes, reweighted, productIds, names);
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        List<ProductSuggestion> top(String prefix, int k) {
+            int from = lowerBound(prefix);
+            int to = lowerBound(prefix + Character.MAX_VALUE);
+            List<ProductSuggestion> result = new ArrayList<>(k);
+            if (from >= to) {
+                return result;
+            }
+
+            // Mỗi phần tử: [from, to, argmax]
+            PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) -> compare(b[2], a[2]));
+            ranges.add(new int[]{from, to, argmax(from, to)});
+            Set<Integer> seen = new HashSet<>();
+            while (!ranges.isEmpty() && result.size() < k) {
+                int[] range = ranges.poll();
+                int best = range[2];
+                int product = productIndexes[best];
+                // 1 sản phẩm có thể khớp prefix ở nhiều từ -> chỉ lấy 1 lần
+                if (seen.add(product)) {
+                    result.add(new ProductSuggestion(productIds[product], names[product]));
+                }
+                if (range[0] < best) {
+                    ranges.add(new int[]{range[0], best, argmax(range[0], best)});
+                }
+                if (best + 1 < range[1]) {
+                    ranges.add(new int[]{best + 1, range[1], argmax(best + 1, range[1])});
+                }
+            }
+            return result;
+        }
+
+        private int lowerBound(String key) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid].compareTo(key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // Vị trí có weight lớn nhất trong [from, to)
+        private int argmax(int from, int to) {
+            int best = -1;
+            for (int l = from + leafOffset, r = to + leafOffset; l < r; l >>= 1, r >>= 1) {
+                if ((l & 1) == 1) {
+                    best = better(best, tree[l++]);
+                }
+                if ((r & 1) == 1) {
+                    best = better(best, tree[--r]);
+                }
+            }
+            return best;
+        }
+
+        private int better(int a, int b) {
+            if (a < 0) {
+                return b;
+            }
+            if (b < 0) {
+                return a;
+            }
+            return compare(a, b) >= 0 ? a : b;
+        }
+
+        // Weight cao hơn thắng; bằng nhau thì key ngắn hơn (khớp sát prefix hơn) thắng
+        private int compare(int a, int b) {
+            int byWeight = Float.compare(weights[a], weights[b]);
+            return byWeight != 0 ? byWeight : Integer.compare(keys[b].length(), keys[a].length());
+        }
+    }
+}
@@ -1,33 +1,45 @@
 package com.ecommerce.service;
 
-import com.ecommerce.dto.TfServingResponse;
 import com.ecommerce.dto.response.ProductResponse;
 import com.ecommerce.entity.Product;
 import com.ecommerce.mapper.ProductMapper;
+import com.ecommerce.recommendation.CategoryPopularityRanking;
+import com.ecommerce.recommendation.EmbeddingRecommender;
+import com.ecommerce.recommendation.ItemCooccurrenceIndex;
+import com.ecommerce.recommendation.RecentInteractionStore;
+import com.ecommerce.recommendation.RecentInteractionStore.RecentInteractions;
+import com.ecommerce.recommendation.RecommendationStore;
+import com.ecommerce.recommendation.TfServingClient;
 import com.ecommerce.repository.ProductRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import com.ecommerce.entity.UserInteraction;
-import com.ecommerce.repository.UserInteractionRepository;
-
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -35,91 +47,160 @@ import com.ecommerce.repository.UserInteractionRepository;
 public class RecommendationService {
 
     private static final int FALLBACK_PRODUCT_COUNT = 5;
+    private static final int AI_RECOMMENDATION_COUNT = 10;
+    private static final int ITEM_TO_ITEM_COUNT = 10;
+    private static final int CONTENT_BASED_COUNT = 10;
 
-    private final RestTemplate restTemplate;
+    private final TfServingClient tfServingClient;
     private final ProductRepository productRepository;
+    private final EmbeddingRecommender embeddingRecommender;
+    private final RecommendationStore recommendationStore;
+    private final ItemCooccurrenceIndex itemCooccurrenceIndex;
+    private final RecentInteractionStore recentInteractionStore;
+    private final CategoryPopularityRanking categoryPopularityRanking;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${application.recommendation.deadline-ms:500}")
+    private long deadlineMs;
+
+    // Mỗi stage chạy trên 1 virtual thread riêng (I/O-bound: HTTP + JDBC)
+    private final ExecutorService stageExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Transaction ngắn chỉ để hydrate, không giữ connection trong lúc chờ các stage
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    public void init() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
 
-    private final UserInteractionRepository userInteractionRepository;
-
-    @Value("${application.ai.service.url}")
-    private String tfServingUrl; // http://tf-serving:8501/v1/models/recommender:predict
+    @PreDestroy
+    public void shutdown() {
+        stageExecutor.shutdownNow();
+    }
 
     /**
      * Get recommended products using Hybrid approach (AI + Content-based).
+     * Đọc danh sách đã precompute trong Redis trước, chỉ chạy pipeline live khi cache miss.
+     * Không chạy trong transaction: các stage lấy connection riêng, thread gọi không giữ connection khi chờ deadline.
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public List<ProductResponse> getRecommendedProducts(Long userId) {
-        List<ProductResponse> aiRecommendations = new ArrayList<>();
-        List<ProductResponse> contentRecommendations = new ArrayList<>();
+        List<Long> recommendedIds = recommendationStore.get(userId)
+                .orElseGet(() -> computeRecommendedProductIds(userId));
 
-        // 1. Get AI Recommendations (Batch)
-        try {
-            aiRecommendations = getAiRecommendations(userId);
-        } catch (Exception e) {
-            log.error("AI Recommendation failed via TF Serving: {}", e.getMessage());
+        // Fallback if empty
+        if (recommendedIds.isEmpty()) {
+            return readOnlyTransaction.execute(status -> getFallbackProducts());
         }
 
-        // 2. Get Real-time Content-based Recommendations
-        try {
-            contentRecommendations = getContentBasedRecommendations(userId);
-        } catch (Exception e) {
-            log.error("Content-based Recommendation failed: {}", e.getMessage());
-        }
+        // Hydrate 1 lần cho tất cả các nguồn (giữ thứ tự merge)
+        return readOnlyTransaction.execute(status -> toProductResponses(recommendedIds));
+    }
+
+    /**
+     * Sản phẩm user vừa xem/tương tác gần đây (mới nhất trước), đọc từ ring buffer in-memory.
+     */
+    public List<ProductResponse> getRecentlyViewedProducts(Long userId) {
+        return toProductResponses(recentInteractionStore.get(userId).distinctProductIds());
+    }
 
-        // 3. Merge Results (AI first, then Content-based)
+    /**
+     * "Khách xem/mua sản phẩm này cũng quan tâm..." từ ma trận co-occurrence in-memory.
+     */
+    public List<ProductResponse> getSimilarProducts(Long productId, int limit) {
+        return toProductResponses(itemCooccurrenceIndex.similar(productId, limit));
+    }
+
+    /**
+     * Live pipeline: AI, Item-to-item và Content-based chạy song song dưới 1 deadline chung; stage nào trễ hạn thì bỏ qua,
+     * trả về những gì đã có thay vì cộng dồn latency của từng stage.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<Long> computeRecommendedProductIds(Long userId) {
+        return computeRecommendations(userId).productIds();
+    }
+
+    /**
+     * Như computeRecommendedProductIds nhưng báo thêm có stage nào trễ deadline hay không
+     * (precompute bỏ qua kết quả thiếu thay vì lưu vào Redis).
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ComputedRecommendations computeRecommendations(Long userId) {
+        // 1. Start AI (Batch), Item-to-item and Real-time Content-based stages concurrently
+        // submit (không dùng CompletableFuture.supplyAsync) để cancel(true) interrupt được virtual thread của stage trễ hạn
+        Future<List<Long>> aiStage = stageExecutor.submit(() -> getAiProductIds(userId));
+        Future<List<Long>> itemToItemStage = stageExecutor.submit(
+                () -> itemCooccurrenceIndex.recommendFor(userId, ITEM_TO_ITEM_COUNT));
+        Future<List<Long>> contentStage = stageExecutor.submit(() -> getContentBasedProductIds(userId));
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        List<Long> aiRecommendations = awaitStage(aiStage, deadline, "AI Recommendation via TF Serving");
+        List<Long> itemToItemRecommendations = awaitStage(itemToItemStage, deadline, "Item-to-item Recommendation");
+        List<Long> contentRecommendations = awaitStage(contentStage, deadline, "Content-based Recommendation");
+        boolean complete = aiRecommendations != null && itemToItemRecommendations != null
+                && contentRecommendations != null;
+
+        // 2. Merge Results (AI first, then Item-to-item, then Content-based)
         // Deduplicate using Set of IDs
-        List<ProductResponse> finalRecommendations = new ArrayList<>();
+        List<Long> finalRecommendations = new ArrayList<>();
         Set<Long> addedIds = new HashSet<>();
 
         // Add AI results
-        for (ProductResponse p : aiRecommendations) {
-            if (addedIds.add(p.id())) {
-                finalRecommendations.add(p);
+        for (Long id : orEmpty(aiRecommendations)) {
+            if (addedIds.add(id)) {
+                finalRecommendations.add(id);
             }
         }
 
-        // Add Content-based results (if not already present)
-        for (ProductResponse p : contentRecommendations) {
-            if (addedIds.add(p.id())) {
-                finalRecommendations.add(p);
+        // Add Item-to-item results (if not already present)
+        for (Long id : orEmpty(itemToItemRecommendations)) {
+            if (addedIds.add(id)) {
+                finalRecommendations.add(id);
             }
         }
 
-        // 4. Fallback if empty
-        if (finalRecommendations.isEmpty()) {
-            return getFallbackProducts();
+        // Add Content-based results (if not already present)
+        for (Long id : orEmpty(contentRecommendations)) {
+            if (addedIds.add(id)) {
+                finalRecommendations.add(id);
+            }
         }
 
-        return finalRecommendations;
+        return new ComputedRecommendations(finalRecommendations, complete);
     }
 
-    private List<ProductResponse> getAiRecommendations(Long userId) {
-        log.info("Getting recommendations for userId: {} from TensorFlow Serving", userId);
-
-        // 1. Chuẩn bị request cho TensorFlow Serving
-        Map<String, Object> requestBody = Map.of(
-                "instances", List.of(String.valueOf(userId)));
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-
-        // 2. Gọi TensorFlow Serving with simple RestTemplate call
-        TfServingResponse response = restTemplate.postForObject(
-                tfServingUrl, request, TfServingResponse.class);
-
-        if (response == null || response.predictions() == null || response.predictions().isEmpty()) {
-            return new ArrayList<>();
+    // null = stage trễ deadline (hoặc bị interrupt), List.of() = stage lỗi
+    private List<Long> awaitStage(Future<List<Long>> stage, long deadline, String stageName) {
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            return stage.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            stage.cancel(true);
+            log.warn("{} missed the {} ms deadline, skipping", stageName, deadlineMs);
+        } catch (InterruptedException e) {
+            stage.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("{} failed: {}", stageName, e.getCause().getMessage());
+            return List.of();
         }
+        return null;
+    }
 
-        TfServingResponse.Prediction prediction = response.predictions().get(0);
-        if (prediction.productIds() == null || prediction.productIds().isEmpty()) {
-            return new ArrayList<>();
-        }
+    private static List<Long> orEmpty(List<Long> productIds) {
+        return productIds != null ? productIds : List.of();
+    }
 
-        List<Long> productIds = prediction.productIds().stream()
-                .map(Long::parseLong)
-                .toList();
+    private List<Long> getAiProductIds(Long userId) {
+        // Ưu tiên engine in-process (không tốn network hop), fallback về TF Serving
+        return embeddingRecommender.isReady()
+                ? embeddingRecommender.recommend(userId, AI_RECOMMENDATION_COUNT)
+                : tfServingClient.recommend(userId);
+    }
 
+    private List<ProductResponse> toProductResponses(List<Long> productIds) {
         List<Product> products = productRepository.findAllById(productIds);
         Map<Long, Product> productMap = products.stream()
                 .collect(Collectors.toMap(Product::getId, Function.identity()));
@@ -136,58 +217,66 @@ public class RecommendationService {
                 .toList();
     }
 
-    private List<ProductResponse> getContentBasedRecommendations(Long userId) {
-        // 1. Get recent interactions
-        List<UserInteraction> interactions = userInteractionRepository.findTop10ByUserIdOrderByTimestampDesc(userId);
-        if (interactions.isEmpty()) {
+    // Chạy ngoài transaction của request (virtual thread) -> chỉ trả về ID, hydrate ở thread gọi
+    private List<Long> getContentBasedProductIds(Long userId) {
+        // 1. Get recent interactions (ring buffer in-memory, không query DB)
+        RecentInteractions recent = recentInteractionStore.get(userId);
+        if (recent.isEmpty()) {
             return new ArrayList<>();
         }
 
-        // 2. Extract Product IDs directly to find Categories
-        Set<Long> interactedProductIds = interactions.stream()
-                .map(UserInteraction::getProductId)
-                .collect(Collectors.toSet());
-
-        List<Product> interactedProducts = productRepository.findAllById(interactedProductIds);
-        if (interactedProducts.isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        // 3. Find most frequent Category
-        Map<com.ecommerce.entity.Category, Long> categoryCount = interactedProducts.stream()
-                .filter(p -> p.getCategory() != null)
-                .collect(Collectors.groupingBy(Product::getCategory, Collectors.counting()));
-
-        if (categoryCount.isEmpty()) {
-            return new ArrayList<>();
+        // 2. Find most frequent Category (đếm trên các sản phẩm không trùng)
+        Set<Long> interactedProductIds = new HashSet<>();
+        Map<Long, Long> categoryCount = new HashMap<>();
+        for (int i = 0; i < recent.productIds().length; i++) {
+            long categoryId = recent.categoryIds()[i];
+            if (interactedProductIds.add(recent.productIds()[i]) && categoryId != 0L) {
+                categoryCount.merge(categoryId, 1L, Long::sum);
+            }
         }
 
-        com.ecommerce.entity.Category topCategory = categoryCount.entrySet().stream()
+        Long topCategoryId = categoryCount.entrySet().stream()
                 .max(Map.Entry.comparingByValue())
                 .map(Map.Entry::getKey)
                 .orElse(null);
 
-        if (topCategory == null) {
+        if (topCategoryId == null) {
             return new ArrayList<>();
         }
 
-        log.info("User {} is interested in Category: {}", userId, topCategory.getName());
+        log.info("User {} is interested in Category: {}", userId, topCategoryId);
+
+        // 4. Recommend popular products in that Category (excluding interacted ones)
+        // Đọc bảng xếp hạng in-memory, loại trừ bằng BitSet thay cho SQL NOT IN
+        if (categoryPopularityRanking.isReady()) {
+            BitSet seen = new BitSet();
+            interactedProductIds.stream()
+                    .filter(id -> id <= Integer.MAX_VALUE)
+                    .forEach(id -> seen.set(id.intValue()));
+            return categoryPopularityRanking.top(topCategoryId, CONTENT_BASED_COUNT, seen);
+        }
 
-        // 4. Recommend similar products in that Category (excluding interacted ones)
         List<Product> similarProducts = productRepository.findTop10ByCategoryIdAndIdNotIn(
-                topCategory.getId(), interactedProductIds);
+                topCategoryId, interactedProductIds);
 
         return similarProducts.stream()
-                .map(ProductMapper::toProductResponse)
+                .map(Product::getId)
                 .toList();
     }
 
     /**
-     * Fallback: Return latest products when TensorFlow Serving is unavailable.
+     * Fallback: Return most popular products (time-decayed) when no personalized result is available.
      */
     private List<ProductResponse> getFallbackProducts() {
         try {
-            // Lấy 5 sản phẩm mới nhất theo ID
+            if (categoryPopularityRanking.isReady()) {
+                List<ProductResponse> popularProducts = toProductResponses(
+                        categoryPopularityRanking.topGlobal(FALLBACK_PRODUCT_COUNT, null));
+                log.info("Fallback: Returning {} popular products", popularProducts.size());
+                return popularProducts;
+            }
+
+            // Ranking chưa build xong -> lấy 5 sản phẩm mới nhất theo ID
             List<Product> latestProducts = productRepository.findAll(
                     PageRequest.of(0, FALLBACK_PRODUCT_COUNT, Sort.by(Sort.Direction.DESC, "id"))).getContent();
 
@@ -201,4 +290,10 @@ public class RecommendationService {
             return new ArrayList<>();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Kết quả pipeline live; complete = false nếu có stage trễ deadline (danh sách có thể thiếu).
+     */
+    public record ComputedRecommendations(List<Long> productIds, boolean complete) {
+    }
+}
@@ -28,6 +28,7 @@ public class ReviewService {
     private final OrderRepository orderRepository;
     private final ProductRepository productRepository;
     private final UserRepository userRepository;
+    private final SearchOutboxService searchOutboxService;
 
     private User getCurrentUser() {
         String email = SecurityContextHolder.getContext().getAuthentication().getName();
@@ -125,5 +126,8 @@ public class ReviewService {
 
         // Lưu lại Product
         productRepository.save(product);
+
+        // Rating thay đổi -> đồng bộ lại search index
+        searchOutboxService.productChanged(product.getId());
     }
 }
\ No newline at end of file
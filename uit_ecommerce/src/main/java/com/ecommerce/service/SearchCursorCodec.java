@@ -0,0 +1,73 @@
+package com.ecommerce.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Mã hóa sort values của hit cuối trang (search_after) thành cursor token dạng Base64 URL-safe.
+ * Token gắn với thứ tự sort đã dùng -> dùng lại token với sort khác bị từ chối thay vì trả kết quả sai.
+ *
+ * Format: byte version, UTF sortSpec, byte count, rồi mỗi giá trị: byte type ('l' long, 'd' double, 's' string, 'n' null) + dữ liệu.
+ */
+final class SearchCursorCodec {
+
+    private static final byte VERSION = 1;
+
+    private SearchCursorCodec() {
+    }
+
+    static String encode(String sortSpec, List<Object> sortValues) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeUTF(sortSpec);
+            out.writeByte(sortValues.size());
+            for (Object value : sortValues) {
+                if (value == null) {
+                    out.writeByte('n');
+                } else if (value instanceof Long || value instanceof Integer) {
+                    out.writeByte('l');
+                    out.writeLong(((Number) value).longValue());
+                } else if (value instanceof Number number) {
+                    out.writeByte('d');
+                    out.writeDouble(number.doubleValue());
+                } else {
+                    out.writeByte('s');
+                    out.writeUTF(value.toString());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode search cursor", e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    static List<Object> decode(String sortSpec, String cursor) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)))) {
+            if (in.readByte() != VERSION || !sortSpec.equals(in.readUTF())) {
+                throw new RuntimeException("Invalid cursor");
+            }
+            int count = in.readByte();
+            List<Object> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte type = in.readByte();
+                values.add(switch (type) {
+                    case 'n' -> null;
+                    case 'l' -> in.readLong();
+                    case 'd' -> in.readDouble();
+                    case 's' -> in.readUTF();
+                    default -> throw new RuntimeException("Invalid cursor");
+                });
+            }
+            return values;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+    }
+}
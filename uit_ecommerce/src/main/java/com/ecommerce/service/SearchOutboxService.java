@@ -0,0 +1,43 @@
+package com.ecommerce.service;
+
+import com.ecommerce.entity.SearchOutbox;
+import com.ecommerce.enums.SearchOutboxOperation;
+import com.ecommerce.repository.SearchOutboxRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
+/**
+ * Ghi nhận sản phẩm cần đồng bộ lại sang Elasticsearch (transactional outbox).
+ * Bắt buộc chạy trong transaction của nghiệp vụ gọi nó; SearchOutboxIndexer drain và index theo batch.
+ */
+@Service
+@RequiredArgsConstructor
+public class SearchOutboxService {
+
+    private final SearchOutboxRepository searchOutboxRepository;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void productChanged(Long productId) {
+        enqueue(productId, SearchOutboxOperation.UPSERT);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void productsChanged(Collection<Long> productIds) {
+        // Nhiều variant của cùng 1 sản phẩm trong 1 đơn -> chỉ ghi 1 dòng
+        new LinkedHashSet<>(productIds).forEach(id -> enqueue(id, SearchOutboxOperation.UPSERT));
+    }
+
+    private void enqueue(Long productId, SearchOutboxOperation operation) {
+        searchOutboxRepository.save(SearchOutbox.builder()
+                .productId(productId)
+                .operation(operation)
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
+}
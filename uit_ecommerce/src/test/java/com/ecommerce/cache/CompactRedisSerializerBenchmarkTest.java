@@ -0,0 +1,66 @@
+package com.ecommerce.cache;
+
+import com.ecommerce.dto.response.ProductResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * So sánh kích thước và thời gian serialize + deserialize giữa compact và JDK serializer
+ * (micro-benchmark thô: warm-up rồi đo trung bình, chỉ để thấy bậc độ lớn - kết quả ghi ra log).
+ * Không chạy trong mvn test mặc định: mvn test -Dgroups=benchmark -Dtest.excludedGroups=
+ */
+@Slf4j
+@Tag("benchmark")
+class CompactRedisSerializerBenchmarkTest {
+
+    private static final int WARMUP_ITERATIONS = 1_000;
+    private static final int MEASURED_ITERATIONS = 2_000;
+
+    @Test
+    void compareWithJdkSerializer() {
+        RedisSerializer<Object> compact = new CompactRedisSerializer(1024);
+        RedisSerializer<Object> jdk = new JdkSerializationRedisSerializer();
+
+        ProductResponse product = CompactRedisSerializerTest.product(1);
+        PageImpl<ProductResponse> page = new PageImpl<>(CompactRedisSerializerTest.products(20), PageRequest.of(0, 20), 500);
+
+        Result compactProduct = measure(compact, product);
+        Result jdkProduct = measure(jdk, product);
+        Result compactPage = measure(compact, page);
+        Result jdkPage = measure(jdk, page);
+
+        report("product", compactProduct, jdkProduct);
+        report("page(20)", compactPage, jdkPage);
+
+        assertThat(compactProduct.bytes).isLessThan(jdkProduct.bytes);
+        assertThat(compactPage.bytes).isLessThan(jdkPage.bytes);
+    }
+
+    private static Result measure(RedisSerializer<Object> serializer, Object value) {
+        byte[] bytes = serializer.serialize(value);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            serializer.deserialize(serializer.serialize(value));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            serializer.deserialize(serializer.serialize(value));
+        }
+        return new Result(bytes.length, (System.nanoTime() - start) / MEASURED_ITERATIONS);
+    }
+
+    private static void report(String name, Result compact, Result jdk) {
+        log.info(String.format("%-9s compact: %6d bytes %8d ns/op | jdk: %6d bytes %8d ns/op | size x%.1f, time x%.1f",
+                name, compact.bytes, compact.nanosPerOp, jdk.bytes, jdk.nanosPerOp,
+                (double) jdk.bytes / compact.bytes, (double) jdk.nanosPerOp / compact.nanosPerOp));
+    }
+
+    private record Result(int bytes, long nanosPerOp) {
+    }
+}
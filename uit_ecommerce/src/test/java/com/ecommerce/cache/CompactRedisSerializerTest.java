@@ -0,0 +1,165 @@
+package com.ecommerce.cache;
+
+import com.ecommerce.dto.response.CategoryResponse;
+import com.ecommerce.dto.response.FacetBucket;
+import com.ecommerce.dto.response.FacetedPage;
+import com.ecommerce.dto.response.ProductResponse;
+import com.ecommerce.dto.response.ProductVariantResponse;
+import com.ecommerce.dto.response.SearchFacets;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactRedisSerializerTest {
+
+    private final CompactRedisSerializer serializer = new CompactRedisSerializer(1024);
+
+    static ProductResponse product(long id) {
+        return ProductResponse.builder()
+                .id(id)
+                .name("Điện thoại Samsung Galaxy S24 Ultra " + id)
+                .description("Màn hình 6.8 inch, camera 200MP, pin 5000mAh, bút S Pen tích hợp.")
+                .basePrice(new BigDecimal("28990000.00"))
+                .category(new CategoryResponse(3L, "Điện thoại", "Smartphone các hãng"))
+                .images(List.of("/uploads/" + id + "-1.jpg", "/uploads/" + id + "-2.jpg"))
+                .variants(List.of(
+                        new ProductVariantResponse(id * 10, "Đen", "256GB", new BigDecimal("28990000.00"), 12, "SS-S24U-BK-256"),
+                        new ProductVariantResponse(id * 10 + 1, "Tím", "512GB", new BigDecimal("33990000.00"), 0, "SS-S24U-PU-512")))
+                .minPrice(new BigDecimal("28990000.00"))
+                .maxPrice(new BigDecimal("33990000.00"))
+                .inStock(true)
+                .build();
+    }
+
+    static List<ProductResponse> products(int count) {
+        List<ProductResponse> products = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            products.add(product(i));
+        }
+        return products;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T roundTrip(T value) {
+        return (T) serializer.deserialize(serializer.serialize(value));
+    }
+
+    @Test
+    void productResponseRoundTrip() {
+        ProductResponse product = product(42);
+
+        assertThat(roundTrip(product)).isEqualTo(product);
+    }
+
+    @Test
+    void nullFieldsAndNullValue() {
+        ProductResponse sparse = new ProductResponse(7L, null, null, null, null, null, null, null, null, null);
+
+        assertThat(roundTrip(sparse)).isEqualTo(sparse);
+        assertThat(serializer.serialize(null)).isEmpty();
+        assertThat(serializer.deserialize(new byte[0])).isNull();
+    }
+
+    @Test
+    void numericEdgeCases() {
+        ProductVariantResponse variant = new ProductVariantResponse(Long.MIN_VALUE, "", "XL",
+                new BigDecimal("-123456789012345678901234567890.123456789"), Integer.MAX_VALUE, "sku");
+
+        assertThat(roundTrip(variant)).isEqualTo(variant);
+        assertThat(roundTrip(Long.MAX_VALUE)).isEqualTo(Long.MAX_VALUE);
+        assertThat(roundTrip(-1)).isEqualTo(-1);
+        assertThat(roundTrip(Double.NaN)).isNaN();
+        assertThat(roundTrip(new BigDecimal("1E+3")).scale()).isEqualTo(-3);
+    }
+
+    @Test
+    void pageRoundTripKeepsPageableAndSort() {
+        Pageable pageable = PageRequest.of(3, 20, Sort.by(Sort.Order.desc("basePrice").ignoreCase(), Sort.Order.asc("id")));
+        Page<ProductResponse> page = new PageImpl<>(products(20), pageable, 1234);
+
+        Page<ProductResponse> restored = roundTrip(page);
+
+        assertThat(restored.getContent()).isEqualTo(page.getContent());
+        assertThat(restored.getPageable()).isEqualTo(pageable);
+        assertThat(restored.getTotalElements()).isEqualTo(1234);
+        assertThat(restored.getTotalPages()).isEqualTo(page.getTotalPages());
+    }
+
+    @Test
+    void unpagedPageRoundTrip() {
+        Page<ProductResponse> page = new PageImpl<>(products(2));
+
+        Page<ProductResponse> restored = roundTrip(page);
+
+        assertThat(restored.getPageable().isUnpaged()).isTrue();
+        assertThat(restored.getContent()).isEqualTo(page.getContent());
+    }
+
+    @Test
+    void facetedPageRoundTrip() {
+        SearchFacets facets = new SearchFacets(
+                List.of(new FacetBucket("3", null, null, 120)),
+                List.of(new FacetBucket("*-1000000.0", null, 1000000.0, 4), new FacetBucket("20000000.0-*", 20000000.0, null, 9)),
+                List.of());
+        FacetedPage<ProductResponse> page = new FacetedPage<>(products(5), PageRequest.of(0, 5), 42, facets);
+
+        FacetedPage<ProductResponse> restored = roundTrip(page);
+
+        assertThat(restored).isInstanceOf(FacetedPage.class);
+        assertThat(restored.getContent()).isEqualTo(page.getContent());
+        assertThat(restored.getFacets()).isEqualTo(facets);
+        assertThat(restored.getTotalElements()).isEqualTo(42);
+    }
+
+    @Test
+    void largePayloadIsCompressed() {
+        Page<ProductResponse> page = new PageImpl<>(products(50), PageRequest.of(0, 50), 50);
+
+        byte[] bytes = serializer.serialize(page);
+        byte[] uncompressed = new CompactRedisSerializer(0).serialize(page);
+
+        assertThat(bytes[0]).isEqualTo(CompactRedisSerializer.FORMAT_DEFLATED);
+        assertThat(uncompressed[0]).isEqualTo(CompactRedisSerializer.FORMAT_COMPACT);
+        assertThat(bytes.length).isLessThan(uncompressed.length);
+        assertThat(((Page<?>) serializer.deserialize(bytes)).getContent()).isEqualTo(page.getContent());
+    }
+
+    @Test
+    void unregisteredTypeFallsBackToJdk() {
+        Map<String, Long> value = new HashMap<>(Map.of("a", 1L));
+
+        byte[] bytes = serializer.serialize(value);
+
+        assertThat(bytes[0]).isEqualTo((byte) 0xAC);
+        assertThat(serializer.deserialize(bytes)).isEqualTo(value);
+    }
+
+    @Test
+    void readsEntriesWrittenByJdkSerializer() {
+        ProductResponse product = product(9);
+        byte[] legacy = new JdkSerializationRedisSerializer().serialize(product);
+
+        assertThat(serializer.deserialize(legacy)).isEqualTo(product);
+    }
+
+    @Test
+    void compactIsSmallerThanJdk() {
+        Page<ProductResponse> page = new PageImpl<>(products(20), PageRequest.of(0, 20), 500);
+        JdkSerializationRedisSerializer jdk = new JdkSerializationRedisSerializer();
+
+        assertThat(serializer.serialize(product(1)).length).isLessThan(jdk.serialize(product(1)).length / 2);
+        assertThat(serializer.serialize(page).length).isLessThan(jdk.serialize(page).length / 2);
+    }
+}
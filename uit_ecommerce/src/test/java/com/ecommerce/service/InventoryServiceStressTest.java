@@ -0,0 +1,162 @@
+package com.ecommerce.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Nhiều thread đặt hàng đồng thời trên vài SKU nóng qua InventoryService trên H2.
+ * Khi tổng nhu cầu > tồn kho: không được bán vượt, số đã trừ phải khớp đúng với các đơn thành công, không deadlock.
+ * Benchmark throughput (@Tag("benchmark"), không chạy mặc định) dùng tồn kho đủ cho mọi đơn
+ * để con số orders/sec phản ánh các lần trừ kho thành công.
+ */
+@Slf4j
+class InventoryServiceStressTest {
+
+    private static final int VARIANTS = 4;
+    private static final int THREADS = 16;
+    private static final int ORDERS_PER_THREAD = 200;
+    // Nhu cầu trung bình ~2400/SKU -> phần lớn đơn bị từ chối
+    private static final int SCARCE_STOCK = 500;
+    // Mỗi đơn lấy tối đa 2 cái/SKU -> không đơn nào thiếu hàng
+    private static final int AMPLE_STOCK = THREADS * ORDERS_PER_THREAD * 2;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private InventoryService inventoryService;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:inventory;MODE=PostgreSQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1");
+        dataSource.setMaximumPoolSize(THREADS);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE product_variants (id BIGINT PRIMARY KEY, stock_quantity INT NOT NULL)");
+        inventoryService = new InventoryService(jdbcTemplate);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP TABLE product_variants");
+        dataSource.close();
+    }
+
+    @Test
+    void concurrentCheckoutsNeverOversell() throws InterruptedException {
+        seedStock(SCARCE_STOCK);
+
+        Run run = runCheckouts();
+
+        assertThat(run.placed()).isPositive();
+        assertThat(run.rejected()).isPositive(); // nhu cầu vượt tồn kho -> phải có đơn bị từ chối
+        assertStockMatches(SCARCE_STOCK, run.sold());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void checkoutThroughput() throws InterruptedException {
+        seedStock(AMPLE_STOCK);
+
+        Run run = runCheckouts();
+
+        assertThat(run.rejected()).isZero();
+        assertStockMatches(AMPLE_STOCK, run.sold());
+        log.info(String.format("inventory stress: %d threads, %d orders placed, %.0f orders/sec",
+                THREADS, run.placed(), run.placed() / run.seconds()));
+    }
+
+    private void seedStock(int stock) {
+        for (long id = 1; id <= VARIANTS; id++) {
+            jdbcTemplate.update("INSERT INTO product_variants (id, stock_quantity) VALUES (?, ?)", id, stock);
+        }
+    }
+
+    private Run runCheckouts() throws InterruptedException {
+        AtomicLongArray sold = new AtomicLongArray(VARIANTS + 1);
+        AtomicInteger placed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        for (int t = 0; t < THREADS; t++) {
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < ORDERS_PER_THREAD; i++) {
+                        Map<Long, Integer> cart = randomCart();
+                        try {
+                            transactionTemplate.executeWithoutResult(status -> inventoryService.decrement(cart));
+                            cart.forEach((id, quantity) -> sold.addAndGet(id.intValue(), quantity));
+                            placed.incrementAndGet();
+                        } catch (InventoryService.OutOfStockException e) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(2, TimeUnit.MINUTES)).isTrue();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        assertThat(errors).isEmpty(); // không deadlock / lỗi lock timeout
+        return new Run(placed.get(), rejected.get(), sold, seconds);
+    }
+
+    private void assertStockMatches(int initialStock, AtomicLongArray sold) {
+        for (long id = 1; id <= VARIANTS; id++) {
+            int stock = jdbcTemplate.queryForObject(
+                    "SELECT stock_quantity FROM product_variants WHERE id = ?", Integer.class, id);
+            assertThat(stock).isGreaterThanOrEqualTo(0);
+            assertThat(initialStock - stock).isEqualTo(sold.get((int) id));
+        }
+    }
+
+    // 1-3 SKU nóng, mỗi SKU 1-2 cái, thứ tự ngẫu nhiên (InventoryService phải tự sắp xếp để tránh deadlock)
+    private static Map<Long, Integer> randomCart() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= VARIANTS; id++) {
+            ids.add(id);
+        }
+        Collections.shuffle(ids, random);
+        Map<Long, Integer> cart = new HashMap<>();
+        for (Long id : ids.subList(0, 1 + random.nextInt(3))) {
+            cart.put(id, 1 + random.nextInt(2));
+        }
+        return cart;
+    }
+
+    private record Run(int placed, int rejected, AtomicLongArray sold, double seconds) {
+    }
+}